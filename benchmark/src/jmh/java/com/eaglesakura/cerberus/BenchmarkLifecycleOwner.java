@@ -0,0 +1,74 @@
+package com.eaglesakura.cerberus;
+
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleOwner;
+import android.arch.lifecycle.LifecycleRegistry;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ベンチマーク用のLifecycleOwner
+ *
+ * ステートの変更はメインスレッドで行い、反映されるまで呼び出し元を待たせる。
+ */
+class BenchmarkLifecycleOwner implements LifecycleOwner {
+
+    static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    private final LifecycleRegistry mRegistry = new LifecycleRegistry(this);
+
+    @Override
+    public Lifecycle getLifecycle() {
+        return mRegistry;
+    }
+
+    /**
+     * 指定したステートまで遷移させる
+     */
+    BenchmarkLifecycleOwner moveTo(Lifecycle.State state) {
+        runOnMainThread(() -> mRegistry.moveToState(state));
+        return this;
+    }
+
+    /**
+     * Ownerに関連付けたPendingCallbackQueueを生成する
+     */
+    PendingCallbackQueue newCallbackQueue() {
+        PendingCallbackQueue[] result = new PendingCallbackQueue[1];
+        runOnMainThread(() -> result[0] = new PendingCallbackQueue().bind(this));
+        return result[0];
+    }
+
+    /**
+     * メインスレッドで処理を行い、完了まで待つ
+     */
+    static void runOnMainThread(Runnable action) {
+        CountDownLatch latch = new CountDownLatch(1);
+        sHandler.post(() -> {
+            try {
+                action.run();
+            } finally {
+                latch.countDown();
+            }
+        });
+        await(latch);
+    }
+
+    /**
+     * ラッチが解放されるまで待つ。
+     * <p>
+     * タスクが完了しない場合にベンチマークが停止しないよう、一定時間で失敗させる。
+     */
+    static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(30, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Benchmark timeout, remaining=" + latch.getCount());
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.eaglesakura.cerberus;
+
+import android.arch.lifecycle.Lifecycle;
+import android.support.v4.os.CancellationSignal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * キャンセルシグナルの数ごとの {@link BackgroundTask#isCanceled()} のコスト
+ * <p>
+ * start()と同様にライフサイクルのシグナルを1つ登録し、残りはCancellationSignalで埋める。
+ * いずれのシグナルもキャンセルされていないため、毎回全てのシグナルが評価される。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CancelCheckBenchmark {
+
+    @Param({"1", "2", "4", "8", "16"})
+    int mSignalCount;
+
+    BenchmarkLifecycleOwner mOwner;
+
+    BackgroundTask<Integer> mTask;
+
+    @Setup
+    public void setup() {
+        mOwner = new BenchmarkLifecycleOwner();
+        PendingCallbackQueue callbackQueue = mOwner.newCallbackQueue();
+        mOwner.moveTo(Lifecycle.State.RESUMED);
+
+        BackgroundTaskBuilder<Integer> builder = new BackgroundTaskBuilder<Integer>(callbackQueue)
+                .callbackOn(CallbackTime.Foreground);
+        for (int i = 1; i < mSignalCount; ++i) {
+            builder.cancelSignal(new CancellationSignal());
+        }
+
+        LifecycleStateDump dumpState = callbackQueue.getCurrentState();
+        BackgroundTask.Signal signal = task -> callbackQueue.isCanceled(CallbackTime.Foreground, dumpState);
+        builder.mTask.mCancelSignals.add(signal);
+        mTask = builder.mTask;
+    }
+
+    @TearDown
+    public void tearDown() {
+        mOwner.moveTo(Lifecycle.State.DESTROYED);
+    }
+
+    @Benchmark
+    public boolean isCanceled() {
+        return mTask.isCanceled();
+    }
+}
@@ -0,0 +1,63 @@
+package com.eaglesakura.cerberus;
+
+import android.arch.lifecycle.Lifecycle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CallbackTimeごとの、start()からcompletedコールバックまでのレイテンシ
+ * <p>
+ * OwnerはRESUMEDのまま維持するため、保留を伴わない最短経路の分布となる。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EndToEndLatencyBenchmark {
+
+    @Param({"Foreground", "CurrentForeground", "Alive", "FireAndForget"})
+    CallbackTime mCallbackTime;
+
+    BenchmarkLifecycleOwner mOwner;
+
+    PendingCallbackQueue mCallbackQueue;
+
+    @Setup
+    public void setup() {
+        mOwner = new BenchmarkLifecycleOwner();
+        mCallbackQueue = mOwner.newCallbackQueue();
+        mOwner.moveTo(Lifecycle.State.RESUMED);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mOwner.moveTo(Lifecycle.State.DESTROYED);
+    }
+
+    @Benchmark
+    public Object startToCompleted() {
+        CountDownLatch latch = new CountDownLatch(1);
+        Object[] result = new Object[1];
+        new BackgroundTaskBuilder<Integer>(mCallbackQueue)
+                .executeOn(ExecuteTarget.GlobalParallel)
+                .callbackOn(mCallbackTime)
+                .async(task -> 1)
+                .completed(value -> {
+                    result[0] = value;
+                    latch.countDown();
+                })
+                .start();
+        BenchmarkLifecycleOwner.await(latch);
+        return result[0];
+    }
+}
@@ -0,0 +1,67 @@
+package com.eaglesakura.cerberus;
+
+import android.arch.lifecycle.Lifecycle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 画面表示直後の最初のタスクのレイテンシ
+ * <p>
+ * cold はスレッドが1つも無い状態から、warm は {@link PendingCallbackQueue#prestart(ExecuteTarget, int)} 済みの状態から
+ * LocalParallelのタスクを1つ実行し、completedまでの時間を計測する。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 100)
+public class FirstTaskLatencyBenchmark {
+
+    @Param({"cold", "warm"})
+    String mPool;
+
+    BenchmarkLifecycleOwner mOwner;
+
+    PendingCallbackQueue mCallbackQueue;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        mOwner = new BenchmarkLifecycleOwner();
+        mCallbackQueue = mOwner.newCallbackQueue();
+        mOwner.moveTo(Lifecycle.State.RESUMED);
+        if ("warm".equals(mPool)) {
+            mCallbackQueue.prestart(ExecuteTarget.LocalParallel, 1);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        mOwner.moveTo(Lifecycle.State.DESTROYED);
+    }
+
+    @Benchmark
+    public void firstTask() {
+        CountDownLatch latch = new CountDownLatch(1);
+        new BackgroundTaskBuilder<Integer>(mCallbackQueue)
+                .executeOn(ExecuteTarget.LocalParallel)
+                .callbackOn(CallbackTime.Foreground)
+                .async(task -> 1)
+                .completed(value -> latch.countDown())
+                .start();
+        BenchmarkLifecycleOwner.await(latch);
+    }
+}
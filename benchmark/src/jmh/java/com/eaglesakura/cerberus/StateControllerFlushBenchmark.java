@@ -0,0 +1,69 @@
+package com.eaglesakura.cerberus;
+
+import android.arch.lifecycle.Lifecycle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 保留キューが大きい場合の {@link StateController#onNext(PendingCallbackQueue)} の所要時間
+ * <p>
+ * onResume直後に、バックグラウンド中に溜まったコールバックを一括で流すケースを再現する。
+ * 呼び出しごとに保留キューを詰め直すため、小さなキューではセットアップの誤差が相対的に大きくなる。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StateControllerFlushBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int mPendingCount;
+
+    BenchmarkLifecycleOwner mOwner;
+
+    PendingCallbackQueue mCallbackQueue;
+
+    StateController mController;
+
+    int mDelivered;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        mOwner = new BenchmarkLifecycleOwner();
+        mCallbackQueue = mOwner.newCallbackQueue();
+        mOwner.moveTo(Lifecycle.State.RESUMED);
+    }
+
+    @Setup(Level.Invocation)
+    public void fillPending() {
+        mController = CallbackTime.Foreground.newStateController();
+        mController.mCallbackTime = CallbackTime.Foreground;
+
+        LifecycleStateDump dumpState = mCallbackQueue.getCurrentState();
+        Runnable action = () -> ++mDelivered;
+        for (int i = 0; i < mPendingCount; ++i) {
+            mController.mPendingActions.add(new PendingCallbackQueue.PendingTask(action, dumpState));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mOwner.moveTo(Lifecycle.State.DESTROYED);
+    }
+
+    @Benchmark
+    public int flush() {
+        mController.onNext(mCallbackQueue);
+        return mDelivered;
+    }
+}
@@ -0,0 +1,65 @@
+package com.eaglesakura.cerberus;
+
+import android.arch.lifecycle.Lifecycle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExecuteTargetごとの、タスク投入から完了コールバックまでのスループット
+ * <p>
+ * 1回の呼び出しでBATCH_SIZE個のタスクを投入し、全ての完了を待つ。
+ * スコアは1タスクあたりの値となるため、gcプロファイラの gc.alloc.rate.norm がタスク1つあたりの割り当てバイト数となる。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SubmitThroughputBenchmark {
+
+    static final int BATCH_SIZE = 1000;
+
+    @Param({"LocalQueue", "LocalParallel", "GlobalQueue", "GlobalParallel", "Network", "NewThread", "MainThread", "Idle"})
+    ExecuteTarget mTarget;
+
+    BenchmarkLifecycleOwner mOwner;
+
+    PendingCallbackQueue mCallbackQueue;
+
+    @Setup
+    public void setup() {
+        mOwner = new BenchmarkLifecycleOwner();
+        mCallbackQueue = mOwner.newCallbackQueue();
+        mOwner.moveTo(Lifecycle.State.RESUMED);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mOwner.moveTo(Lifecycle.State.DESTROYED);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void submit() {
+        CountDownLatch latch = new CountDownLatch(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; ++i) {
+            new BackgroundTaskBuilder<Integer>(mCallbackQueue)
+                    .executeOn(mTarget)
+                    .callbackOn(CallbackTime.FireAndForget)
+                    .async(task -> 1)
+                    .finalized(latch::countDown)
+                    .start();
+        }
+        BenchmarkLifecycleOwner.await(latch);
+    }
+}
@@ -0,0 +1,7 @@
+package android.app;
+
+public class Activity {
+    public boolean isFinishing() {
+        return false;
+    }
+}
@@ -0,0 +1,7 @@
+package android.app;
+
+public class Dialog {
+    public boolean isShowing() {
+        return false;
+    }
+}
@@ -0,0 +1,5 @@
+package android.arch.lifecycle;
+
+public interface GenericLifecycleObserver extends LifecycleObserver {
+    void onStateChanged(LifecycleOwner source, Lifecycle.Event event);
+}
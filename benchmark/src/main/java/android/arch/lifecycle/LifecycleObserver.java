@@ -0,0 +1,4 @@
+package android.arch.lifecycle;
+
+public interface LifecycleObserver {
+}
@@ -0,0 +1,5 @@
+package android.arch.lifecycle;
+
+public interface LifecycleOwner {
+    Lifecycle getLifecycle();
+}
@@ -0,0 +1,163 @@
+package android.arch.lifecycle;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * JVM上で動作するLifecycle実装
+ *
+ * 追加されたObserverには現在のStateまでのEventを再生し、
+ * Stateを下る方向のEventは登録の逆順に通知する。
+ * 呼び出しはメインスレッドから行う必要がある。
+ */
+public class LifecycleRegistry extends Lifecycle {
+
+    private final LifecycleOwner mOwner;
+
+    private final List<LifecycleObserver> mObservers = new CopyOnWriteArrayList<>();
+
+    private State mState = State.INITIALIZED;
+
+    public LifecycleRegistry(LifecycleOwner owner) {
+        mOwner = owner;
+    }
+
+    @Override
+    public void addObserver(LifecycleObserver observer) {
+        mObservers.add(observer);
+        for (Event event : upEvents(State.INITIALIZED, mState)) {
+            dispatch(observer, event);
+        }
+    }
+
+    @Override
+    public void removeObserver(LifecycleObserver observer) {
+        mObservers.remove(observer);
+    }
+
+    @Override
+    public State getCurrentState() {
+        return mState;
+    }
+
+    public void markState(State state) {
+        mState = state;
+    }
+
+    public void handleLifecycleEvent(Event event) {
+        State next = stateAfter(event);
+        if (next == mState) {
+            return;
+        }
+        mState = next;
+
+        List<LifecycleObserver> observers = new ArrayList<>(mObservers);
+        if (isDownEvent(event)) {
+            for (int i = observers.size() - 1; i >= 0; --i) {
+                dispatch(observers.get(i), event);
+            }
+        } else {
+            for (LifecycleObserver observer : observers) {
+                dispatch(observer, event);
+            }
+        }
+    }
+
+    /**
+     * 指定Stateまで順にEventを発行する
+     */
+    public void moveToState(State state) {
+        while (mState != state) {
+            handleLifecycleEvent(mState.compareTo(state) < 0 ? upEvent(mState) : downEvent(mState));
+        }
+    }
+
+    private void dispatch(LifecycleObserver observer, Event event) {
+        if (observer instanceof GenericLifecycleObserver) {
+            ((GenericLifecycleObserver) observer).onStateChanged(mOwner, event);
+            return;
+        }
+
+        for (Method method : observer.getClass().getDeclaredMethods()) {
+            OnLifecycleEvent annotation = method.getAnnotation(OnLifecycleEvent.class);
+            if (annotation == null || (annotation.value() != event && annotation.value() != Event.ON_ANY)) {
+                continue;
+            }
+
+            try {
+                method.setAccessible(true);
+                Class<?>[] params = method.getParameterTypes();
+                if (params.length == 0) {
+                    method.invoke(observer);
+                } else if (params.length == 1) {
+                    method.invoke(observer, mOwner);
+                } else {
+                    method.invoke(observer, mOwner, event);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static List<Event> upEvents(State from, State to) {
+        List<Event> result = new ArrayList<>();
+        State state = from;
+        while (state.compareTo(to) < 0) {
+            Event event = upEvent(state);
+            result.add(event);
+            state = stateAfter(event);
+        }
+        return result;
+    }
+
+    private static boolean isDownEvent(Event event) {
+        return event == Event.ON_PAUSE || event == Event.ON_STOP || event == Event.ON_DESTROY;
+    }
+
+    private static Event upEvent(State state) {
+        switch (state) {
+            case INITIALIZED:
+            case DESTROYED:
+                return Event.ON_CREATE;
+            case CREATED:
+                return Event.ON_START;
+            case STARTED:
+                return Event.ON_RESUME;
+            default:
+                throw new IllegalArgumentException(state.name());
+        }
+    }
+
+    private static Event downEvent(State state) {
+        switch (state) {
+            case CREATED:
+                return Event.ON_DESTROY;
+            case STARTED:
+                return Event.ON_STOP;
+            case RESUMED:
+                return Event.ON_PAUSE;
+            default:
+                throw new IllegalArgumentException(state.name());
+        }
+    }
+
+    private static State stateAfter(Event event) {
+        switch (event) {
+            case ON_CREATE:
+            case ON_STOP:
+                return State.CREATED;
+            case ON_START:
+            case ON_PAUSE:
+                return State.STARTED;
+            case ON_RESUME:
+                return State.RESUMED;
+            case ON_DESTROY:
+                return State.DESTROYED;
+            default:
+                throw new IllegalArgumentException(event.name());
+        }
+    }
+}
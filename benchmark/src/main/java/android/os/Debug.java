@@ -0,0 +1,13 @@
+package android.os;
+
+public class Debug {
+    private Debug() {
+    }
+
+    /**
+     * JVMでは取得できない
+     */
+    public static long threadCpuTimeNanos() {
+        return -1;
+    }
+}
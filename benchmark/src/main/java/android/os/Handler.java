@@ -0,0 +1,44 @@
+package android.os;
+
+/**
+ * JVM上で動作するHandler
+ */
+public class Handler {
+
+    private final Looper mLooper;
+
+    public Handler() {
+        this(Looper.myLooper());
+    }
+
+    public Handler(Looper looper) {
+        if (looper == null) {
+            throw new IllegalStateException("Looper is null");
+        }
+        mLooper = looper;
+    }
+
+    public Looper getLooper() {
+        return mLooper;
+    }
+
+    public boolean post(Runnable action) {
+        return mLooper.mQueue.enqueue(action, SystemClock.uptimeMillis(), false);
+    }
+
+    public boolean postDelayed(Runnable action, long delayMillis) {
+        return mLooper.mQueue.enqueue(action, SystemClock.uptimeMillis() + Math.max(0, delayMillis), false);
+    }
+
+    public boolean postAtTime(Runnable action, long uptimeMillis) {
+        return mLooper.mQueue.enqueue(action, uptimeMillis, false);
+    }
+
+    public boolean postAtFrontOfQueue(Runnable action) {
+        return mLooper.mQueue.enqueue(action, 0, true);
+    }
+
+    public void removeCallbacks(Runnable action) {
+        mLooper.mQueue.remove(action);
+    }
+}
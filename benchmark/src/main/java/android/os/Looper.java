@@ -0,0 +1,73 @@
+package android.os;
+
+/**
+ * JVM上でメインスレッドを再現するLooper
+ *
+ * getMainLooper()の呼び出し時に "main" スレッドを起動し、MessageQueueを処理し続ける。
+ */
+public class Looper {
+
+    private static final ThreadLocal<Looper> sThreadLocal = new ThreadLocal<>();
+
+    private static Looper sMainLooper;
+
+    final MessageQueue mQueue = new MessageQueue();
+
+    final Thread mThread;
+
+    private Looper(Thread thread) {
+        mThread = thread;
+    }
+
+    public static Looper getMainLooper() {
+        synchronized (Looper.class) {
+            if (sMainLooper == null) {
+                Object lock = new Object();
+                Looper[] holder = new Looper[1];
+                Thread thread = new Thread(() -> {
+                    Looper looper = new Looper(Thread.currentThread());
+                    sThreadLocal.set(looper);
+                    synchronized (lock) {
+                        holder[0] = looper;
+                        lock.notifyAll();
+                    }
+                    looper.mQueue.loop();
+                }, "main");
+                thread.setDaemon(true);
+                thread.start();
+
+                synchronized (lock) {
+                    while (holder[0] == null) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }
+                sMainLooper = holder[0];
+            }
+            return sMainLooper;
+        }
+    }
+
+    public static Looper myLooper() {
+        return sThreadLocal.get();
+    }
+
+    public static MessageQueue myQueue() {
+        Looper looper = myLooper();
+        if (looper == null) {
+            throw new IllegalStateException("Not looper thread : " + Thread.currentThread().getName());
+        }
+        return looper.mQueue;
+    }
+
+    public Thread getThread() {
+        return mThread;
+    }
+
+    public MessageQueue getQueue() {
+        return mQueue;
+    }
+}
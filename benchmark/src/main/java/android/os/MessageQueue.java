@@ -0,0 +1,145 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * JVM上で動作するMessageQueue
+ *
+ * 実行時刻順にRunnableを処理し、処理すべきメッセージが無くなった時点でIdleHandlerを呼び出す。
+ */
+public class MessageQueue {
+
+    public interface IdleHandler {
+        boolean queueIdle();
+    }
+
+    private final PriorityQueue<Message> mMessages = new PriorityQueue<>();
+
+    private final List<IdleHandler> mIdleHandlers = new ArrayList<>();
+
+    private long mSequence;
+
+    MessageQueue() {
+    }
+
+    public void addIdleHandler(IdleHandler handler) {
+        synchronized (this) {
+            mIdleHandlers.add(handler);
+            notifyAll();
+        }
+    }
+
+    public void removeIdleHandler(IdleHandler handler) {
+        synchronized (this) {
+            mIdleHandlers.remove(handler);
+        }
+    }
+
+    public boolean isIdle() {
+        synchronized (this) {
+            Message head = mMessages.peek();
+            return head == null || head.mWhen > SystemClock.uptimeMillis();
+        }
+    }
+
+    boolean enqueue(Runnable action, long when, boolean front) {
+        synchronized (this) {
+            long sequence = front ? -(++mSequence) : ++mSequence;
+            mMessages.add(new Message(action, front ? 0 : when, sequence));
+            notifyAll();
+            return true;
+        }
+    }
+
+    void remove(Runnable action) {
+        synchronized (this) {
+            Iterator<Message> iterator = mMessages.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().mAction == action) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    void loop() {
+        while (true) {
+            Message message = next();
+            try {
+                message.mAction.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private Message next() {
+        boolean idleHandled = false;
+        while (true) {
+            List<IdleHandler> idleHandlers = null;
+            synchronized (this) {
+                long now = SystemClock.uptimeMillis();
+                Message head = mMessages.peek();
+                if (head != null && head.mWhen <= now) {
+                    return mMessages.poll();
+                }
+
+                if (!idleHandled && !mIdleHandlers.isEmpty()) {
+                    idleHandlers = new ArrayList<>(mIdleHandlers);
+                } else {
+                    try {
+                        if (head == null) {
+                            wait();
+                        } else {
+                            wait(Math.max(1, head.mWhen - now));
+                        }
+                    } catch (InterruptedException e) {
+                        // メインスレッドは止めない
+                    }
+                    idleHandled = false;
+                    continue;
+                }
+            }
+
+            // Androidと同様に、1回の待機につき1度だけIdleHandlerを呼び出す
+            idleHandled = true;
+            for (IdleHandler handler : idleHandlers) {
+                boolean keep;
+                try {
+                    keep = handler.queueIdle();
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                    keep = false;
+                }
+                if (!keep) {
+                    removeIdleHandler(handler);
+                }
+            }
+        }
+    }
+
+    private static class Message implements Comparable<Message> {
+        final Runnable mAction;
+
+        final long mWhen;
+
+        final long mSequence;
+
+        Message(Runnable action, long when, long sequence) {
+            mAction = action;
+            mWhen = when;
+            mSequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Message o) {
+            if (mWhen != o.mWhen) {
+                return Long.compare(mWhen, o.mWhen);
+            }
+            return Long.compare(mSequence, o.mSequence);
+        }
+    }
+}
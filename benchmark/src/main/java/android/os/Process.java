@@ -0,0 +1,26 @@
+package android.os;
+
+public class Process {
+    public static final int THREAD_PRIORITY_DEFAULT = 0;
+
+    public static final int THREAD_PRIORITY_BACKGROUND = 10;
+
+    public static final int THREAD_PRIORITY_LOWEST = 19;
+
+    private Process() {
+    }
+
+    /**
+     * JVMではスレッドの優先度は変更しない
+     */
+    public static void setThreadPriority(int priority) {
+    }
+
+    public static int myPid() {
+        return 1;
+    }
+
+    public static int myTid() {
+        return (int) Thread.currentThread().getId();
+    }
+}
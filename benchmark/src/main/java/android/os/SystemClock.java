@@ -0,0 +1,23 @@
+package android.os;
+
+import java.util.concurrent.TimeUnit;
+
+public class SystemClock {
+
+    private static final long sBootTime = System.nanoTime();
+
+    private SystemClock() {
+    }
+
+    public static long uptimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sBootTime);
+    }
+
+    public static long elapsedRealtime() {
+        return uptimeMillis();
+    }
+
+    public static long elapsedRealtimeNanos() {
+        return System.nanoTime() - sBootTime;
+    }
+}
@@ -0,0 +1,12 @@
+package android.os;
+
+public class Trace {
+    private Trace() {
+    }
+
+    public static void beginSection(String sectionName) {
+    }
+
+    public static void endSection() {
+    }
+}
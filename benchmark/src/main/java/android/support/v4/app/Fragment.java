@@ -0,0 +1,7 @@
+package android.support.v4.app;
+
+public class Fragment {
+    public FragmentActivity getActivity() {
+        return null;
+    }
+}
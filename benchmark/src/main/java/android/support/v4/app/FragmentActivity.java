@@ -0,0 +1,6 @@
+package android.support.v4.app;
+
+import android.app.Activity;
+
+public class FragmentActivity extends Activity {
+}
@@ -0,0 +1,13 @@
+package android.support.v4.os;
+
+public class CancellationSignal {
+    private volatile boolean mCanceled;
+
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    public void cancel() {
+        mCanceled = true;
+    }
+}
@@ -0,0 +1,501 @@
+package com.eaglesakura.cerberus;
+
+import android.arch.lifecycle.Lifecycle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多数のLifecycleOwnerがpause/resumeを繰り返す中で大量のタスクを流す負荷シミュレーション
+ *
+ * メインスレッド上のtickでライフサイクルイベントとタスク投入をランダムに行い、
+ * スループット・レイテンシ・保留キューの最大値・スレッド数を集計する。
+ * 全てのコールバックは届いた時点のステートを検証され、CallbackTimeの規則に反したものは違反として報告される。
+ * <p>
+ * 使用例: {@code ../gradlew -p benchmark simulate -PsimArgs="--owners=100 --tasks=10000"}
+ */
+public class LifecycleSimulation {
+
+    /**
+     * シミュレーションの設定
+     */
+    static class Config {
+        int mOwners = 100;
+
+        int mTasks = 10000;
+
+        /**
+         * 1tickで投入するタスク数
+         */
+        int mTasksPerTick = 500;
+
+        /**
+         * 1tickで発行するライフサイクルイベント数
+         */
+        int mEventsPerTick = 5;
+
+        long mTickMs = 1;
+
+        /**
+         * CREATED状態のOwnerがdestroyされる確率
+         */
+        double mDestroyRate = 0.05;
+
+        /**
+         * 失敗させるタスクの割合
+         */
+        double mFailRate = 0.05;
+
+        /**
+         * IO待ちを模したタスクの割合
+         */
+        double mIoRate = 0.3;
+
+        long mSeed = 1;
+
+        long mTimeoutMs = 120 * 1000;
+
+        List<ExecuteTarget> mTargets = new ArrayList<>();
+
+        List<CallbackTime> mCallbackTimes = new ArrayList<>();
+
+        Config() {
+            Collections.addAll(mTargets, ExecuteTarget.values());
+            Collections.addAll(mCallbackTimes, CallbackTime.values());
+        }
+
+        static Config parse(String[] args) {
+            Config config = new Config();
+            for (String arg : args) {
+                int index = arg.indexOf('=');
+                if (!arg.startsWith("--") || index < 0) {
+                    throw new IllegalArgumentException("Invalid argument : " + arg);
+                }
+
+                String key = arg.substring(2, index);
+                String value = arg.substring(index + 1);
+                switch (key) {
+                    case "owners":
+                        config.mOwners = Integer.parseInt(value);
+                        break;
+                    case "tasks":
+                        config.mTasks = Integer.parseInt(value);
+                        break;
+                    case "tasks-per-tick":
+                        config.mTasksPerTick = Integer.parseInt(value);
+                        break;
+                    case "events-per-tick":
+                        config.mEventsPerTick = Integer.parseInt(value);
+                        break;
+                    case "tick-ms":
+                        config.mTickMs = Long.parseLong(value);
+                        break;
+                    case "destroy-rate":
+                        config.mDestroyRate = Double.parseDouble(value);
+                        break;
+                    case "fail-rate":
+                        config.mFailRate = Double.parseDouble(value);
+                        break;
+                    case "io-rate":
+                        config.mIoRate = Double.parseDouble(value);
+                        break;
+                    case "seed":
+                        config.mSeed = Long.parseLong(value);
+                        break;
+                    case "timeout-ms":
+                        config.mTimeoutMs = Long.parseLong(value);
+                        break;
+                    case "targets":
+                        config.mTargets.clear();
+                        for (String name : value.split(",")) {
+                            config.mTargets.add(ExecuteTarget.valueOf(name));
+                        }
+                        break;
+                    case "callbacks":
+                        config.mCallbackTimes.clear();
+                        for (String name : value.split(",")) {
+                            config.mCallbackTimes.add(CallbackTime.valueOf(name));
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option : " + key);
+                }
+            }
+            return config;
+        }
+    }
+
+    /**
+     * 統計のサンプリング間隔
+     */
+    static final long SAMPLING_INTERVAL_MS = 10;
+
+    /**
+     * 処理が止まったと判断するまでの安定時間
+     */
+    static final long SETTLE_MS = 500;
+
+    /**
+     * 報告する違反の最大数
+     */
+    static final int MAX_REPORTED_VIOLATIONS = 20;
+
+    final Config mConfig;
+
+    final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * メインスレッドでのみ使用する
+     */
+    final Random mRandom;
+
+    /**
+     * 現在生存しているOwner、メインスレッドでのみ使用する
+     */
+    final List<SimulatedLifecycleOwner> mOwners = new ArrayList<>();
+
+    /**
+     * 生成した全てのOwner
+     */
+    final List<SimulatedLifecycleOwner> mAllOwners = new CopyOnWriteArrayList<>();
+
+    final Map<CallbackTime, LatencyHistogram> mLatencies = new EnumMap<>(CallbackTime.class);
+
+    final AtomicInteger mStartedBodies = new AtomicInteger();
+
+    final AtomicInteger mFinishedBodies = new AtomicInteger();
+
+    final AtomicInteger mDeliveredCallbacks = new AtomicInteger();
+
+    final AtomicInteger mViolationCount = new AtomicInteger();
+
+    final List<String> mViolations = Collections.synchronizedList(new ArrayList<String>());
+
+    final CountDownLatch mChurnFinished = new CountDownLatch(1);
+
+    int mSubmitted;
+
+    int mNextOwnerId;
+
+    volatile boolean mChurning = true;
+
+    volatile long mLastBodyFinishedNs;
+
+    int mPeakPendingCallbacks;
+
+    long mPeakHeapBytes;
+
+    int mPeakTaskThreads;
+
+    int mPeakProcessThreads;
+
+    int mPeakQueuedTasks;
+
+    LifecycleSimulation(Config config) {
+        mConfig = config;
+        mRandom = new Random(config.mSeed);
+        for (CallbackTime callbackTime : CallbackTime.values()) {
+            mLatencies.put(callbackTime, new LatencyHistogram());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LifecycleSimulation simulation = new LifecycleSimulation(Config.parse(args));
+        boolean passed = simulation.run(System.out);
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * シミュレーションを実行し、結果を出力する
+     *
+     * @return 違反が無く、時間内に全てのタスクが収束した場合true
+     */
+    boolean run(PrintStream out) throws InterruptedException {
+        final long START_TIME = System.nanoTime();
+        final long DEADLINE = START_TIME + TimeUnit.MILLISECONDS.toNanos(mConfig.mTimeoutMs);
+
+        runOnMainThread(() -> {
+            for (int i = 0; i < mConfig.mOwners; ++i) {
+                newOwner();
+            }
+        });
+        mHandler.post(this::tick);
+
+        // 投入完了後、ワーカーが全て止まるまでライフサイクルを揺らし続ける
+        boolean settled = false;
+        long stableSince = 0;
+        int lastFinished = -1;
+        while (System.nanoTime() < DEADLINE) {
+            sample();
+            int finished = mFinishedBodies.get();
+            if (mChurnFinished.getCount() == 0 && isWorkerIdle() && finished == lastFinished) {
+                if (stableSince == 0) {
+                    stableSince = SystemClock.uptimeMillis();
+                } else if (SystemClock.uptimeMillis() - stableSince >= SETTLE_MS) {
+                    settled = true;
+                    break;
+                }
+            } else {
+                stableSince = 0;
+            }
+            lastFinished = finished;
+            Thread.sleep(SAMPLING_INTERVAL_MS);
+        }
+        mChurning = false;
+        final long CHURN_END = mLastBodyFinishedNs;
+
+        // 保留されているコールバックを全て流し、届くべきものが届くのを待つ
+        runOnMainThread(() -> {
+            for (SimulatedLifecycleOwner owner : mOwners) {
+                owner.moveTo(Lifecycle.State.RESUMED);
+            }
+        });
+        boolean drained = false;
+        while (System.nanoTime() < DEADLINE) {
+            sample();
+            if (getPendingCallbacks() == 0 && Looper.getMainLooper().getQueue().isIdle()) {
+                drained = true;
+                break;
+            }
+            Thread.sleep(SAMPLING_INTERVAL_MS);
+        }
+
+        report(out, settled && drained, START_TIME, CHURN_END);
+
+        runOnMainThread(() -> {
+            for (SimulatedLifecycleOwner owner : mOwners) {
+                owner.moveTo(Lifecycle.State.DESTROYED);
+            }
+        });
+        return settled && drained && mViolationCount.get() == 0;
+    }
+
+    /**
+     * メインスレッドで、ライフサイクルイベントの発行とタスクの投入を行う
+     * <p>
+     * 投入したタスクの開始処理がメインスレッドへpostされてから次のtickが実行されるため、
+     * 投入時のステートとタスクに記録されるステートは一致する。
+     */
+    void tick() {
+        if (!mChurning) {
+            return;
+        }
+
+        for (int i = 0; i < mConfig.mEventsPerTick; ++i) {
+            int index = mRandom.nextInt(mOwners.size());
+            SimulatedLifecycleOwner owner = mOwners.get(index);
+            owner.step(mRandom, mConfig.mDestroyRate);
+            if (owner.isDestroyed()) {
+                // 画面遷移を模して、新しいOwnerに差し替える
+                mOwners.remove(index);
+                newOwner();
+            }
+        }
+
+        for (int i = 0; i < mConfig.mTasksPerTick && mSubmitted < mConfig.mTasks; ++i) {
+            submit(mOwners.get(mRandom.nextInt(mOwners.size())));
+        }
+        if (mSubmitted >= mConfig.mTasks) {
+            mChurnFinished.countDown();
+        }
+
+        mHandler.postDelayed(this::tick, mConfig.mTickMs);
+    }
+
+    void newOwner() {
+        SimulatedLifecycleOwner owner = new SimulatedLifecycleOwner(mNextOwnerId++);
+        owner.moveTo(Lifecycle.State.RESUMED);
+        mOwners.add(owner);
+        mAllOwners.add(owner);
+    }
+
+    /**
+     * ランダムな内容のタスクを1つ投入する
+     */
+    void submit(SimulatedLifecycleOwner owner) {
+        final ExecuteTarget TARGET = mConfig.mTargets.get(mRandom.nextInt(mConfig.mTargets.size()));
+        final CallbackTime CALLBACK_TIME = mConfig.mCallbackTimes.get(mRandom.nextInt(mConfig.mCallbackTimes.size()));
+        final boolean FAIL = mRandom.nextDouble() < mConfig.mFailRate;
+        // メインスレッドではIO待ちを行わない
+        final boolean IO = TARGET != ExecuteTarget.MainThread && mRandom.nextDouble() < mConfig.mIoRate;
+        final long WORK_US = IO ? 1000 + mRandom.nextInt(4000) : 20 + mRandom.nextInt(200);
+        final int TRANSITION_COUNT = owner.getTransitionCount();
+        final long SUBMITTED_NS = System.nanoTime();
+
+        ++mSubmitted;
+        new BackgroundTaskBuilder<Integer>(owner.getCallbackQueue())
+                .executeOn(TARGET)
+                .callbackOn(CALLBACK_TIME)
+                .tag(IO ? "simulation/io" : "simulation/cpu")
+                .async(task -> {
+                    mStartedBodies.incrementAndGet();
+                    try {
+                        if (IO) {
+                            Thread.sleep(WORK_US / 1000);
+                        } else {
+                            spin(WORK_US);
+                        }
+                        if (FAIL) {
+                            throw new IllegalStateException("Simulated failure");
+                        }
+                        return owner.getId();
+                    } finally {
+                        mFinishedBodies.incrementAndGet();
+                        mLastBodyFinishedNs = System.nanoTime();
+                    }
+                })
+                .completed(result -> onDelivered(owner, CALLBACK_TIME, TRANSITION_COUNT, SUBMITTED_NS))
+                .failed(error -> onDelivered(owner, CALLBACK_TIME, TRANSITION_COUNT, SUBMITTED_NS))
+                .start();
+    }
+
+    /**
+     * コールバックが届いた時点のステートを検証する
+     */
+    void onDelivered(SimulatedLifecycleOwner owner, CallbackTime callbackTime, int transitionCount, long submittedNs) {
+        mLatencies.get(callbackTime).record(System.nanoTime() - submittedNs);
+        mDeliveredCallbacks.incrementAndGet();
+
+        if (Thread.currentThread() != Looper.getMainLooper().getThread()) {
+            violation(owner, callbackTime, "delivered on " + Thread.currentThread().getName());
+            return;
+        }
+
+        Lifecycle.State state = owner.getState();
+        switch (callbackTime) {
+            case Foreground:
+                if (state != Lifecycle.State.RESUMED) {
+                    violation(owner, callbackTime, "delivered in " + state);
+                }
+                break;
+            case CurrentForeground:
+                if (owner.getTransitionCount() != transitionCount) {
+                    violation(owner, callbackTime, "delivered after " + (owner.getTransitionCount() - transitionCount) + " transitions, state=" + state);
+                }
+                break;
+            case Alive:
+                if (!state.isAtLeast(Lifecycle.State.CREATED)) {
+                    violation(owner, callbackTime, "delivered in " + state);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    void violation(SimulatedLifecycleOwner owner, CallbackTime callbackTime, String message) {
+        if (mViolationCount.incrementAndGet() <= MAX_REPORTED_VIOLATIONS) {
+            mViolations.add("owner#" + owner.getId() + " " + callbackTime + " : " + message);
+        }
+    }
+
+    /**
+     * ワーカーで実行中・実行待ちのタスクが無ければtrue
+     */
+    boolean isWorkerIdle() {
+        TaskMetrics.Snapshot metrics = TaskMetrics.snapshot();
+        for (ExecuteTarget target : ExecuteTarget.values()) {
+            if (metrics.getQueueDepth(target) > 0 || metrics.getActiveThreads(target) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getPendingCallbacks() {
+        int result = 0;
+        for (SimulatedLifecycleOwner owner : mAllOwners) {
+            for (CallbackTime callbackTime : CallbackTime.values()) {
+                result += owner.getCallbackQueue().getCallbackStats(callbackTime).getPendingCount();
+            }
+        }
+        return result;
+    }
+
+    void sample() {
+        mPeakPendingCallbacks = Math.max(mPeakPendingCallbacks, getPendingCallbacks());
+
+        Runtime runtime = Runtime.getRuntime();
+        mPeakHeapBytes = Math.max(mPeakHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+        mPeakTaskThreads = Math.max(mPeakTaskThreads, ExecuteTargetSettings.getThreadCount());
+        mPeakProcessThreads = Math.max(mPeakProcessThreads, Thread.activeCount());
+
+        TaskMetrics.Snapshot metrics = TaskMetrics.snapshot();
+        int queued = 0;
+        for (ExecuteTarget target : ExecuteTarget.values()) {
+            queued += metrics.getQueueDepth(target);
+        }
+        mPeakQueuedTasks = Math.max(mPeakQueuedTasks, queued);
+    }
+
+    void report(PrintStream out, boolean converged, long startNs, long churnEndNs) {
+        double elapsedSec = Math.max(1, churnEndNs - startNs) / 1000.0 / 1000.0 / 1000.0;
+        long canceledCallbacks = 0;
+        for (SimulatedLifecycleOwner owner : mAllOwners) {
+            for (CallbackTime callbackTime : CallbackTime.values()) {
+                canceledCallbacks += owner.getCallbackQueue().getCallbackStats(callbackTime).getCanceledCount();
+            }
+        }
+
+        out.println("== Lifecycle simulation ==");
+        out.printf("owners=%d (created %d), tasks=%d, seed=%d%n", mConfig.mOwners, mAllOwners.size(), mConfig.mTasks, mConfig.mSeed);
+        out.printf("converged          : %s%n", converged);
+        out.printf("submitted          : %d%n", mSubmitted);
+        out.printf("executed           : %d (not run %d)%n", mFinishedBodies.get(), mSubmitted - mStartedBodies.get());
+        out.printf("throughput         : %.1f tasks/s%n", mFinishedBodies.get() / elapsedSec);
+        out.printf("callbacks          : delivered %d, canceled %d%n", mDeliveredCallbacks.get(), canceledCallbacks);
+        out.printf("peak pending cb    : %d%n", mPeakPendingCallbacks);
+        out.printf("peak queued tasks  : %d%n", mPeakQueuedTasks);
+        out.printf("peak heap          : %.1f MB%n", mPeakHeapBytes / 1024.0 / 1024.0);
+        out.printf("peak threads       : %d task / %d process%n", mPeakTaskThreads, mPeakProcessThreads);
+
+        out.println("latency (start -> callback) [ms]");
+        out.printf("  %-18s %8s %8s %8s %8s %8s%n", "CallbackTime", "count", "p50", "p90", "p99", "max");
+        for (CallbackTime callbackTime : CallbackTime.values()) {
+            LatencyHistogram.Snapshot snapshot = mLatencies.get(callbackTime).snapshot();
+            out.printf("  %-18s %8d %8.2f %8.2f %8.2f %8.2f%n", callbackTime, snapshot.getCount(),
+                    snapshot.getPercentileMs(50), snapshot.getPercentileMs(90), snapshot.getPercentileMs(99), snapshot.getMaxMs());
+        }
+
+        out.printf("violations         : %d%n", mViolationCount.get());
+        synchronized (mViolations) {
+            for (String violation : mViolations) {
+                out.println("  " + violation);
+            }
+        }
+    }
+
+    /**
+     * 指定時間CPUを占有する
+     */
+    static void spin(long us) {
+        final long END = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(us);
+        while (System.nanoTime() < END) {
+            // busy loop
+        }
+    }
+
+    void runOnMainThread(Runnable action) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        mHandler.post(() -> {
+            try {
+                action.run();
+            } finally {
+                latch.countDown();
+            }
+        });
+        latch.await();
+    }
+}
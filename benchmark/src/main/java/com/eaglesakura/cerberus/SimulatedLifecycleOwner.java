@@ -0,0 +1,102 @@
+package com.eaglesakura.cerberus;
+
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleOwner;
+import android.arch.lifecycle.LifecycleRegistry;
+
+import java.util.Random;
+
+/**
+ * 負荷シミュレーション用のLifecycleOwner
+ *
+ * Activityのように pause/resume を繰り返し、まれに stop/start や destroy を行う。
+ * 全ての操作はメインスレッドから行う必要がある。
+ */
+class SimulatedLifecycleOwner implements LifecycleOwner {
+
+    private final LifecycleRegistry mRegistry = new LifecycleRegistry(this);
+
+    private final PendingCallbackQueue mCallbackQueue;
+
+    private final int mId;
+
+    /**
+     * ステートが変化した回数
+     */
+    private int mTransitionCount;
+
+    SimulatedLifecycleOwner(int id) {
+        mId = id;
+        mCallbackQueue = new PendingCallbackQueue().bind(this);
+    }
+
+    @Override
+    public Lifecycle getLifecycle() {
+        return mRegistry;
+    }
+
+    int getId() {
+        return mId;
+    }
+
+    PendingCallbackQueue getCallbackQueue() {
+        return mCallbackQueue;
+    }
+
+    Lifecycle.State getState() {
+        return mRegistry.getCurrentState();
+    }
+
+    int getTransitionCount() {
+        return mTransitionCount;
+    }
+
+    boolean isDestroyed() {
+        return getState() == Lifecycle.State.DESTROYED;
+    }
+
+    /**
+     * 指定したステートまで遷移させる
+     */
+    void moveTo(Lifecycle.State state) {
+        while (getState() != state) {
+            Lifecycle.State current = getState();
+            if (current.compareTo(state) < 0) {
+                dispatch(current == Lifecycle.State.CREATED ? Lifecycle.Event.ON_START :
+                        current == Lifecycle.State.STARTED ? Lifecycle.Event.ON_RESUME : Lifecycle.Event.ON_CREATE);
+            } else {
+                dispatch(current == Lifecycle.State.RESUMED ? Lifecycle.Event.ON_PAUSE :
+                        current == Lifecycle.State.STARTED ? Lifecycle.Event.ON_STOP : Lifecycle.Event.ON_DESTROY);
+            }
+        }
+    }
+
+    /**
+     * ランダムに次のライフサイクルイベントを発行する
+     *
+     * @param destroyRate CREATED状態からdestroyされる確率
+     */
+    void step(Random random, double destroyRate) {
+        switch (getState()) {
+            case INITIALIZED:
+                dispatch(Lifecycle.Event.ON_CREATE);
+                break;
+            case CREATED:
+                dispatch(random.nextDouble() < destroyRate ? Lifecycle.Event.ON_DESTROY : Lifecycle.Event.ON_START);
+                break;
+            case STARTED:
+                dispatch(random.nextDouble() < 0.7 ? Lifecycle.Event.ON_RESUME : Lifecycle.Event.ON_STOP);
+                break;
+            case RESUMED:
+                dispatch(Lifecycle.Event.ON_PAUSE);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void dispatch(Lifecycle.Event event) {
+        ++mTransitionCount;
+        mRegistry.handleLifecycleEvent(event);
+    }
+}
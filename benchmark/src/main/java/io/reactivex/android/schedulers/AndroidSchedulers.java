@@ -0,0 +1,22 @@
+package io.reactivex.android.schedulers;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * JVM上のメインスレッドで処理するScheduler
+ */
+public final class AndroidSchedulers {
+
+    private static final Scheduler MAIN_THREAD = Schedulers.from(new Handler(Looper.getMainLooper())::post);
+
+    private AndroidSchedulers() {
+    }
+
+    public static Scheduler mainThread() {
+        return MAIN_THREAD;
+    }
+}
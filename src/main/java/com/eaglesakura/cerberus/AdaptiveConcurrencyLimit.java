@@ -0,0 +1,111 @@
+package com.eaglesakura.cerberus;
+
+/**
+ * 処理時間とエラー率から同時実行数を調整する
+ *
+ * AIMD(Additive Increase / Multiplicative Decrease)で制御される。
+ * <ul>
+ * <li>処理時間が基準値の許容倍率以内で、同時実行数が上限の半分以上使われていれば、上限1つ分のサンプルごとに上限を1増やす</li>
+ * <li>エラーが発生するか、処理時間が基準値の許容倍率を超えたら上限を一定比率で減らす。減らすのは上限1つ分のサンプルにつき1回までとする</li>
+ * </ul>
+ * 基準値は最小処理時間とする。基準値は上限が下限に達している(最も負荷が低い)間のみ、直近の最小処理時間へ引き上げられる。
+ * 同時実行数は各タスクの開始時点の値のため、ピーク時より小さくなることを考慮して半分を閾値とする。
+ */
+class AdaptiveConcurrencyLimit {
+
+    /**
+     * 基準値を更新するサンプル数
+     */
+    static final int BASELINE_WINDOW = 100;
+
+    final int mMinLimit;
+
+    final int mMaxLimit;
+
+    /**
+     * 上限を減らす比率
+     */
+    double mBackoffRatio = 0.9;
+
+    /**
+     * 基準値に対して許容する処理時間の倍率
+     */
+    double mTolerance = 2.0;
+
+    private double mLimit;
+
+    /**
+     * 基準となる処理時間
+     */
+    private long mBaselineNs;
+
+    /**
+     * 集計中のサンプル群の最小処理時間
+     */
+    private long mWindowMinNs = Long.MAX_VALUE;
+
+    private int mWindowSamples;
+
+    /**
+     * 最後に上限を減らしてからのサンプル数
+     */
+    private int mSamplesSinceBackoff;
+
+    AdaptiveConcurrencyLimit(int minLimit, int maxLimit, int initialLimit) {
+        mMinLimit = Math.max(1, minLimit);
+        mMaxLimit = Math.max(mMinLimit, maxLimit);
+        mLimit = Math.max(mMinLimit, Math.min(mMaxLimit, initialLimit));
+    }
+
+    /**
+     * 現在の同時実行数の上限を取得する
+     */
+    synchronized int getLimit() {
+        return (int) mLimit;
+    }
+
+    /**
+     * 処理結果を反映する
+     *
+     * @param latencyNs 処理時間
+     * @param inFlight  処理開始時点の同時実行数
+     * @param failed    処理に失敗した場合true
+     * @return 上限が変化した場合true
+     */
+    synchronized boolean onSample(long latencyNs, int inFlight, boolean failed) {
+        int oldLimit = getLimit();
+
+        updateBaseline(latencyNs);
+        ++mSamplesSinceBackoff;
+
+        if (failed || (mBaselineNs > 0 && latencyNs > mBaselineNs * mTolerance)) {
+            if (mSamplesSinceBackoff >= oldLimit) {
+                mLimit = Math.max(mMinLimit, mLimit * mBackoffRatio);
+                mSamplesSinceBackoff = 0;
+            }
+        } else if (inFlight * 2 >= mLimit) {
+            // 上限の半分以上が使われている場合のみ増やす
+            mLimit = Math.min(mMaxLimit, mLimit + (1.0 / mLimit));
+        }
+
+        return oldLimit != getLimit();
+    }
+
+    private void updateBaseline(long latencyNs) {
+        mWindowMinNs = Math.min(mWindowMinNs, latencyNs);
+        if (mBaselineNs == 0) {
+            mBaselineNs = latencyNs;
+        } else {
+            mBaselineNs = Math.min(mBaselineNs, latencyNs);
+        }
+
+        if (++mWindowSamples >= BASELINE_WINDOW) {
+            if (getLimit() <= mMinLimit) {
+                // 最も負荷が低い状態での処理時間なので、環境の変化として基準値に反映する
+                mBaselineNs = mWindowMinNs;
+            }
+            mWindowMinNs = Long.MAX_VALUE;
+            mWindowSamples = 0;
+        }
+    }
+}
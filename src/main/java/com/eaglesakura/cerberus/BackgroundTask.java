@@ -3,12 +3,29 @@ package com.eaglesakura.cerberus;
 import com.eaglesakura.cerberus.error.TaskException;
 import com.eaglesakura.cerberus.error.TaskCanceledException;
 import com.eaglesakura.cerberus.error.TaskTimeoutException;
+import com.eaglesakura.cerberus.lambda.Function1;
+import com.eaglesakura.cerberus.lambda.Function2;
 
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 
 import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
 
 import io.reactivex.disposables.Disposable;
 
@@ -20,6 +37,13 @@ import io.reactivex.disposables.Disposable;
  */
 public class BackgroundTask<T> {
 
+    /**
+     * 待機処理の分割単位
+     * <p>
+     * ユーザのキャンセルシグナルはこの間隔で確認される。
+     */
+    static final long WAIT_SLICE_MS = 10;
+
     /**
      * コールバック管理
      */
@@ -77,6 +101,184 @@ public class BackgroundTask<T> {
      */
     private BackgroundTask.Action0 mFinalizeCallback;
 
+    /**
+     * 進捗通知時の処理
+     */
+    private BackgroundTask.ProgressAction<T> mProgressCallback;
+
+    /**
+     * 進捗通知の最短間隔
+     * <p>
+     * デフォルトは1フレーム相当
+     */
+    long mProgressIntervalMs = 16;
+
+    /**
+     * 進捗通知のロック
+     */
+    private final Object mProgressLock = new Object();
+
+    /**
+     * 配送待ちの最新の進捗
+     */
+    private Object mProgress;
+
+    /**
+     * 進捗の配送が予約済みであればtrue
+     */
+    private boolean mProgressScheduled;
+
+    /**
+     * 最後に進捗を配送した時刻
+     */
+    private long mProgressDeliveredTime;
+
+    /**
+     * 実行期限
+     * <p>
+     * 0以下の場合は期限を設けない
+     */
+    long mDeadlineMs;
+
+    /**
+     * 実行期限のタイマー
+     */
+    TaskTimer.Timeout mDeadlineTimer;
+
+    /**
+     * 優先度
+     * <p>
+     * 実行待ちキューが溢れた場合、値の小さいタスクから破棄される
+     */
+    int mPriority;
+
+    /**
+     * 実行待ちキューの枠を確保済みであればtrue
+     * <p>
+     * キューの上限が {@link QueuePolicy#Block} の場合のみ使用され、実行対象のキューのロックで保護される。
+     */
+    boolean mQueueSlotReserved;
+
+    /**
+     * 実行スレッドへ投げた時刻(System.nanoTime)
+     */
+    private volatile long mEnqueuedTimeNs;
+
+    /**
+     * 非同期処理を開始した時刻
+     */
+    private volatile long mStartedTimeNs;
+
+    /**
+     * 非同期処理を終了した時刻
+     */
+    private volatile long mFinishedTimeNs;
+
+    /**
+     * 処理結果が確定した時刻
+     */
+    private volatile long mSettledTimeNs;
+
+    /**
+     * コールバックが呼び出された時刻
+     */
+    private volatile long mDeliveredTimeNs;
+
+    /**
+     * タスクのタグ
+     */
+    String mTag;
+
+    /**
+     * 実行するスレッド
+     */
+    ExecuteTarget mExecuteTarget;
+
+    /**
+     * start()された時刻(SystemClock.uptimeMillis)
+     */
+    long mStartedUptimeMs;
+
+    /**
+     * 非同期処理開始時のスレッドのCPU時間
+     */
+    long mCpuStartNs = -1;
+
+    /**
+     * 非同期処理で消費したCPU時間
+     */
+    volatile long mCpuTimeNs = -1;
+
+    static final int WATCHDOG_RUNNING = 0;
+
+    static final int WATCHDOG_STUCK = 1;
+
+    static final int WATCHDOG_FINISHED = 2;
+
+    /**
+     * {@link TaskWatchdog} による監視状態
+     */
+    int mWatchdogState = WATCHDOG_FINISHED;
+
+    /**
+     * {@link TaskWatchdog} のタイマー
+     */
+    volatile TaskTimer.Timeout mWatchdogTimer;
+
+    /**
+     * タスクの生成元
+     *
+     * {@link SlowCallbackMonitor} が有効な場合のみ、サンプリングして記録される。
+     */
+    Throwable mOrigin;
+
+    /**
+     * {@link TaskTracer} で記録するためのID
+     *
+     * 記録が無効な場合は0となる。
+     */
+    long mTraceId;
+
+    /**
+     * {@link TaskTracer} で記録するための名前
+     */
+    String mTraceName;
+
+    /**
+     * 再試行した回数
+     */
+    volatile int mRetryCount;
+
+    /**
+     * 非同期処理を実行中のスレッド
+     */
+    Thread mWorkerThread;
+
+    /**
+     * 待機処理中のスレッド
+     */
+    private final Set<Thread> mWaitingThreads = new HashSet<>();
+
+    /**
+     * キャンセルのために割り込みをかけたスレッド
+     */
+    private final Set<Thread> mWokenThreads = new HashSet<>();
+
+    /**
+     * 強制終了させた原因
+     */
+    private volatile Exception mAbortError;
+
+    /**
+     * このタスクが親となるスコープ
+     */
+    private TaskScope mScope;
+
+    /**
+     * このタスクが子として所属するスコープ
+     */
+    TaskScope mParentScope;
+
     /**
      * チェーン実行されるタスク
      */
@@ -121,6 +323,15 @@ public class BackgroundTask<T> {
         return mState;
     }
 
+    /**
+     * 再試行した回数を取得する
+     * <p>
+     * 初回の実行中は0となる。
+     */
+    public int getRetryCount() {
+        return mRetryCount;
+    }
+
     /**
      * 戻り値を取得する
      */
@@ -134,23 +345,345 @@ public class BackgroundTask<T> {
      * 途中でキャンセルされた場合は例外を投げて終了される
      */
     public void waitTime(long timeMs) throws TaskException {
+        sleep(timeMs);
+    }
+
+    /**
+     * 指定時間だけスレッドを停止する。
+     * <p>
+     * 途中でキャンセルされた場合は即座に例外を投げて終了される。
+     */
+    public void sleep(long timeMs) throws TaskCanceledException {
         if (timeMs <= 0) {
             return;
         }
 
-        final long START_TIME = System.currentTimeMillis();
-        while ((System.currentTimeMillis() - START_TIME) < timeMs) {
+        block(timeMs, sliceMs -> {
+            Thread.sleep(sliceMs);
+            return false;
+        });
+    }
+
+    /**
+     * キューから値を取り出す。値が無ければ追加されるまで待つ。
+     * <p>
+     * 途中でキャンセルされた場合は即座に例外を投げて終了される。
+     */
+    public <E> E take(@NonNull BlockingQueue<E> queue) throws TaskCanceledException {
+        return poll(queue, -1);
+    }
+
+    /**
+     * キューから値を取り出す。値が無ければ指定時間だけ追加を待つ。
+     * <p>
+     * 途中でキャンセルされた場合は即座に例外を投げて終了される。
+     *
+     * @param timeoutMs 待ち時間。負の値であれば無制限に待つ。
+     * @return 取り出した値。時間内に取り出せなかった場合はnull
+     */
+    public <E> E poll(@NonNull BlockingQueue<E> queue, long timeoutMs) throws TaskCanceledException {
+        Object[] holder = new Object[1];
+        block(timeoutMs, sliceMs -> {
+            holder[0] = queue.poll(sliceMs, TimeUnit.MILLISECONDS);
+            return holder[0] != null;
+        });
+        return (E) holder[0];
+    }
+
+    /**
+     * ロックを取得する。
+     * <p>
+     * 途中でキャンセルされた場合は即座に例外を投げて終了される。
+     */
+    public void lock(@NonNull Lock lock) throws TaskCanceledException {
+        tryLock(lock, -1);
+    }
+
+    /**
+     * 指定時間だけロックの取得を試みる。
+     * <p>
+     * 途中でキャンセルされた場合は即座に例外を投げて終了される。
+     *
+     * @param timeoutMs 待ち時間。負の値であれば無制限に待つ。
+     * @return ロックを取得できた場合true
+     */
+    public boolean tryLock(@NonNull Lock lock, long timeoutMs) throws TaskCanceledException {
+        return block(timeoutMs, sliceMs -> lock.tryLock(sliceMs, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Conditionのシグナルを待つ。
+     * <p>
+     * {@link Condition#await(long, TimeUnit)} と同じく、呼び出し時点でロックを保持している必要がある。
+     * 途中でキャンセルされた場合は即座に例外を投げて終了される。
+     *
+     * @param timeoutMs 待ち時間。負の値であれば無制限に待つ。
+     * @return シグナルを受け取った場合true
+     */
+    public boolean await(@NonNull Condition condition, long timeoutMs) throws TaskCanceledException {
+        return block(timeoutMs, sliceMs -> condition.await(sliceMs, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * カウントが0になるまで待つ。
+     * <p>
+     * 途中でキャンセルされた場合は即座に例外を投げて終了される。
+     *
+     * @param timeoutMs 待ち時間。負の値であれば無制限に待つ。
+     * @return カウントが0になった場合true
+     */
+    public boolean await(@NonNull CountDownLatch latch, long timeoutMs) throws TaskCanceledException {
+        return block(timeoutMs, sliceMs -> latch.await(sliceMs, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Futureの完了を待ち、結果を取得する。
+     * <p>
+     * Futureが失敗した場合はその原因を投げる。
+     * 途中でキャンセルされた場合は即座に例外を投げて終了される。
+     */
+    public <V> V get(@NonNull Future<V> future) throws Exception {
+        return get(future, -1);
+    }
+
+    /**
+     * 指定時間だけFutureの完了を待ち、結果を取得する。
+     * <p>
+     * Futureが失敗した場合はその原因を投げる。
+     * 途中でキャンセルされた場合は即座に例外を投げて終了される。
+     *
+     * @param timeoutMs 待ち時間。負の値であれば無制限に待つ。
+     */
+    public <V> V get(@NonNull Future<V> future, long timeoutMs) throws Exception {
+        Object[] holder = new Object[1];
+        ExecutionException[] error = new ExecutionException[1];
+        boolean done = block(timeoutMs, sliceMs -> {
             try {
-                Thread.sleep(1);
-            } catch (Exception e) {
+                holder[0] = future.get(sliceMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return false;
+            } catch (ExecutionException e) {
+                error[0] = e;
             }
+            return true;
+        });
 
-            if (isCanceled()) {
-                throw new TaskCanceledException();
+        if (!done) {
+            throw new TaskTimeoutException();
+        } else if (error[0] != null) {
+            Throwable cause = error[0].getCause();
+            throw (cause instanceof Exception) ? (Exception) cause : error[0];
+        }
+        return (V) holder[0];
+    }
+
+    /**
+     * キャンセルを確認しながら待機処理を行う。
+     * <p>
+     * 待機は {@link #WAIT_SLICE_MS} 単位に分割され、その間隔でキャンセルシグナルが確認される。
+     * ライフサイクルの変化・タイムアウト・スコープのキャンセルでは割り込みによって即座に起こされる。
+     *
+     * @param timeoutMs 待ち時間。負の値であれば無制限に待つ。
+     * @return 待機処理が完了した場合true, 時間切れの場合false
+     */
+    private boolean block(long timeoutMs, Blocking blocking) throws TaskCanceledException {
+        final long DEADLINE = (timeoutMs < 0) ? Long.MAX_VALUE : (SystemClock.uptimeMillis() + timeoutMs);
+        beginWait();
+        try {
+            while (true) {
+                throwIfCanceled();
+
+                // 時間切れであっても、1度は待機処理を試みる
+                long remaining = Math.max(0, DEADLINE - SystemClock.uptimeMillis());
+                if (blocking.call(Math.min(remaining, WAIT_SLICE_MS))) {
+                    return true;
+                } else if (remaining == 0) {
+                    return false;
+                }
             }
+        } catch (InterruptedException e) {
+            throw new TaskCanceledException(e);
+        } finally {
+            endWait();
+        }
+    }
+
+    void beginWait() {
+        boolean first;
+        synchronized (mWaitingThreads) {
+            first = mWaitingThreads.isEmpty();
+            mWaitingThreads.add(Thread.currentThread());
+        }
+
+        if (first && mCallbackQueue != null) {
+            mCallbackQueue.onWaitStarted(this);
+        }
+    }
+
+    void endWait() {
+        boolean last;
+        synchronized (mWaitingThreads) {
+            Thread current = Thread.currentThread();
+            mWaitingThreads.remove(current);
+            if (mWokenThreads.remove(current)) {
+                // 自身がかけた割り込みを消費する
+                Thread.interrupted();
+            }
+            last = mWaitingThreads.isEmpty();
+        }
+
+        if (last && mCallbackQueue != null) {
+            mCallbackQueue.onWaitFinished(this);
         }
     }
 
+    /**
+     * キャンセル状態であれば、待機中のスレッドを起こす
+     * <p>
+     * 割り込みにより、待機中のスレッドが使用しているInterruptibleChannelは閉じられる。
+     */
+    void wakeIfCanceled() {
+        if (!isCanceled()) {
+            return;
+        }
+
+        synchronized (mWaitingThreads) {
+            for (Thread thread : mWaitingThreads) {
+                if (mWokenThreads.add(thread)) {
+                    thread.interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * 子タスクを管理するスコープを取得する。
+     * <p>
+     * スコープで生成された子タスクは、このタスクのキャンセルを引き継ぐ。
+     * このタスクは全ての子タスクの処理が終わるまで完了しない。
+     */
+    public TaskScope scope() {
+        synchronized (this) {
+            if (mScope == null) {
+                mScope = new TaskScope(this);
+            }
+            return mScope;
+        }
+    }
+
+    TaskScope getScope() {
+        synchronized (this) {
+            return mScope;
+        }
+    }
+
+    /**
+     * 失敗した試行のスコープを破棄する
+     *
+     * 再試行時に、前回の失敗や子タスクを引き継がないようにする。
+     */
+    void resetScope() {
+        synchronized (this) {
+            mScope = null;
+        }
+    }
+
+    /**
+     * 進捗を通知する。
+     * <p>
+     * 進捗は一定間隔ごとにまとめられ、最新の値のみがCallbackTimeに従ってUIThreadへ配送される。
+     * コールバックが保留されている間も、保持されるのは最新の値のみとなる。
+     */
+    public void publishProgress(Object progress) {
+        if (mProgressCallback == null) {
+            return;
+        }
+
+        long delayMs;
+        synchronized (mProgressLock) {
+            mProgress = progress;
+            if (mProgressScheduled) {
+                // 配送待ちの値を上書きするだけでよい
+                return;
+            }
+            mProgressScheduled = true;
+            delayMs = Math.max(0, (mProgressDeliveredTime + mProgressIntervalMs) - SystemClock.uptimeMillis());
+        }
+
+        PendingCallbackQueue.sHandler.postDelayed(() -> {
+            mCallbackQueue.run(mCallbackTime, this, () -> handleProgress(), () -> onProgressDropped());
+        }, delayMs);
+    }
+
+    /**
+     * 配送待ちの進捗が、ライフサイクルによって破棄された
+     *
+     * 次の進捗を再び予約できるようにする。
+     */
+    private void onProgressDropped() {
+        synchronized (mProgressLock) {
+            mProgress = null;
+            mProgressScheduled = false;
+        }
+    }
+
+    /**
+     * 並列処理の補助を {@link ExecuteTarget#GlobalParallel} の実行待ちキューへ積む
+     *
+     * キューが上限に達している場合、補助は行われず呼び出し元のスレッドだけで処理する。
+     */
+    private Executor getParallelHelperExecutor() {
+        ThreadControllerImpl controller = mCallbackQueue.getThreadController();
+        return command -> controller.enqueueHelper(ExecuteTarget.GlobalParallel, this, command);
+    }
+
+    /**
+     * リストの各要素を {@link ExecuteTarget#GlobalParallel} で並列に変換する。
+     * <p>
+     * 戻り値の順序は入力と同じになる。チャンクの切れ目ごとにキャンセルチェックが行われ、
+     * キャンセルされた場合は全てのチャンクを中断して例外を投げる。
+     */
+    public <E, R> List<R> parallelMap(@NonNull List<E> list, @NonNull Function1<E, R> function) throws Exception {
+        List<R> results = new ArrayList<>(Collections.<R>nCopies(list.size(), null));
+        new ParallelChunkRunner(this, list.size()) {
+            @Override
+            void onChunk(int start, int end) throws Exception {
+                for (int i = start; i < end; ++i) {
+                    results.set(i, function.apply(list.get(i)));
+                }
+            }
+        }.execute(getParallelHelperExecutor());
+        return results;
+    }
+
+    /**
+     * リストを {@link ExecuteTarget#GlobalParallel} で並列に集約する。
+     * <p>
+     * チャンクごとにidentityからaccumulatorで集約し、その結果を入力順にcombinerで結合する。
+     * そのため、identityは結合に影響しない値である必要がある。
+     */
+    public <E, R> R parallelReduce(@NonNull List<E> list, R identity, @NonNull Function2<R, E, R> accumulator, @NonNull Function2<R, R, R> combiner) throws Exception {
+        Map<Integer, R> partials = new TreeMap<>();
+        new ParallelChunkRunner(this, list.size()) {
+            @Override
+            void onChunk(int start, int end) throws Exception {
+                R value = identity;
+                for (int i = start; i < end; ++i) {
+                    value = accumulator.apply(value, list.get(i));
+                }
+                synchronized (partials) {
+                    partials.put(start, value);
+                }
+            }
+        }.execute(getParallelHelperExecutor());
+
+        R result = identity;
+        for (R value : partials.values()) {
+            result = combiner.apply(result, value);
+        }
+        return result;
+    }
+
     /**
      * awaitを行い、結果を捨てる
      */
@@ -276,7 +809,7 @@ public class BackgroundTask<T> {
      * タスクがキャンセル状態であればtrue
      */
     public boolean isCanceled() {
-        if (hasCanceledError()) {
+        if (hasCanceledError() || mAbortError != null) {
             return true;
         }
 
@@ -317,6 +850,23 @@ public class BackgroundTask<T> {
         mCompletedCallback.call(next, this);
     }
 
+    private void handleProgress() {
+        Object progress;
+        synchronized (mProgressLock) {
+            progress = mProgress;
+            mProgress = null;
+            mProgressScheduled = false;
+            mProgressDeliveredTime = SystemClock.uptimeMillis();
+        }
+
+        // 完了後の進捗は破棄する
+        if (mProgressCallback == null || isFinished() || isCanceled()) {
+            return;
+        }
+
+        mProgressCallback.call(progress, this);
+    }
+
     @Deprecated
     private void handleChain() {
         // 連続実行タスクが残っているなら、チェーンで実行を開始する
@@ -374,35 +924,226 @@ public class BackgroundTask<T> {
             if (mState == BackgroundTask.State.Finished) {
                 // タスクが終わってしまっているので、ハンドリングする
                 if (!isCanceled() && hasError()) {
-                    mCallbackQueue.run(mCallbackTime, () -> {
+                    mCallbackQueue.run(mCallbackTime, this, () -> {
                         handleFailed(getError());
-                    });
+                    }, null);
                 }
             }
             return this;
         }
     }
 
+    BackgroundTask<T> progressed(ProgressAction<T> progressCallback) {
+        synchronized (this) {
+            mProgressCallback = progressCallback;
+            return this;
+        }
+    }
+
     BackgroundTask<T> finalized(Action0 finalizeCallback) {
         synchronized (this) {
             mFinalizeCallback = finalizeCallback;
             if (mState == State.Finished) {
-                mCallbackQueue.run(mCallbackTime, () -> {
+                mCallbackQueue.run(mCallbackTime, this, () -> {
                     handleFinalize();
-                });
+                }, null);
             }
             return this;
         }
     }
 
+    /**
+     * 実行スレッドへ投げられるまで待った時間を取得する
+     *
+     * @return 実行されていなければ負の値
+     */
+    public double getQueueWaitMs() {
+        return toMs(mEnqueuedTimeNs, mStartedTimeNs);
+    }
+
+    /**
+     * 非同期処理の実行時間を取得する
+     *
+     * 再試行した場合、最後の実行時間となる。
+     *
+     * @return 処理が終わっていなければ負の値
+     */
+    public double getRunTimeMs() {
+        return toMs(mStartedTimeNs, mFinishedTimeNs);
+    }
+
+    /**
+     * 処理結果が確定してからコールバックされるまでの時間を取得する
+     *
+     * @return コールバックされていなければ負の値
+     */
+    public double getCallbackDelayMs() {
+        return toMs(mSettledTimeNs, mDeliveredTimeNs);
+    }
+
+    /**
+     * 非同期処理で消費したCPU時間を取得する
+     *
+     * {@link TaskCpuAccounting} が無効、またはCPU時間を取得できない環境では負の値となる。
+     */
+    public double getCpuTimeMs() {
+        long cpuTimeNs = mCpuTimeNs;
+        return cpuTimeNs >= 0 ? (double) cpuTimeNs / 1000000.0 : -1;
+    }
+
+    /**
+     * {@link BackgroundTaskBuilder#tag(String)} で指定したタグを取得する
+     */
+    public String getTag() {
+        return mTag;
+    }
+
+    private static double toMs(long startNs, long endNs) {
+        if (startNs == 0 || endNs == 0) {
+            return -1;
+        }
+        return (double) (endNs - startNs) / 1000000.0;
+    }
+
+    /**
+     * 実行スレッドへ投げられた
+     */
+    void onEnqueued() {
+        mStartedTimeNs = 0;
+        mFinishedTimeNs = 0;
+        mEnqueuedTimeNs = System.nanoTime();
+    }
+
+    /**
+     * 非同期処理が開始された
+     */
+    void onStarted(ExecuteTarget target) {
+        mStartedTimeNs = System.nanoTime();
+        TaskMetrics.sQueueWait[target.ordinal()].record(mStartedTimeNs - mEnqueuedTimeNs);
+    }
+
+    /**
+     * 非同期処理が終了した
+     */
+    void onFinished(ExecuteTarget target) {
+        mFinishedTimeNs = System.nanoTime();
+        TaskMetrics.sRunTime[target.ordinal()].record(mFinishedTimeNs - mStartedTimeNs);
+    }
+
+    /**
+     * 処理結果のコールバックが呼び出された
+     */
+    private void onDelivered() {
+        if (mDeliveredTimeNs != 0) {
+            return;
+        }
+        mDeliveredTimeNs = System.nanoTime();
+        TaskMetrics.sCallbackDelay[mCallbackTime.ordinal()].record(mDeliveredTimeNs - mSettledTimeNs);
+    }
+
+    /**
+     * 実行期限のタイマーを解除する
+     */
+    private void cancelDeadline() {
+        if (mDeadlineTimer != null) {
+            mDeadlineTimer.cancel();
+            mDeadlineTimer = null;
+        }
+    }
+
+    /**
+     * 実行中のスレッドへ割り込みをかける
+     */
+    void interruptWorker() {
+        synchronized (this) {
+            if (mWorkerThread != null) {
+                mWorkerThread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * タスクを強制終了させ、指定したエラーで失敗させる。
+     * <p>
+     * 実行中の非同期処理はキャンセル状態となり、スレッドへ割り込みがかけられる。
+     * 実行待ちであれば、スレッドを占有せずにキューから取り除かれる。
+     * UIThreadから呼び出す。
+     *
+     * @return 強制終了させた場合true
+     */
+    boolean abort(Exception error) {
+        return abort(error, false);
+    }
+
+    /**
+     * タスクを強制終了させる
+     *
+     * @param watched trueの場合、{@link TaskWatchdog} の監視下で非同期処理が実行中の場合のみ強制終了させる
+     * @return 強制終了させた場合true
+     */
+    boolean abort(Exception error, boolean watched) {
+        boolean running;
+        synchronized (this) {
+            if (mState == State.Finished || mAbortError != null) {
+                return false;
+            }
+            if (watched && mWatchdogState != WATCHDOG_RUNNING) {
+                // 非同期処理は終了済みで、結果の配送待ちとなっている
+                return false;
+            }
+            mAbortError = error;
+            running = (mState == State.Running);
+        }
+        interruptWorker();
+        wakeIfCanceled();
+
+        if (mSubscription != null) {
+            mSubscription.dispose();
+            mCallbackQueue.remove(mSubscription);
+            mSubscription = null;
+        }
+
+        if (!running && mParentScope != null) {
+            // 非同期処理が実行されないため、ここで親へ通知する
+            mParentScope.onChildSettled(this, error);
+        }
+
+        setError(error);
+        return true;
+    }
+
+    /**
+     * 処理結果のコールバックを実行する
+     *
+     * ライフサイクルによってはコールバックは保留される。
+     */
+    private void runCallback(Runnable callback) {
+        boolean pending = mCallbackQueue.run(mCallbackTime, this, () -> {
+            onDelivered();
+            TaskRegistry.unregister(this);
+            TaskTracer.onCallbackBegin(this);
+            try {
+                callback.run();
+            } finally {
+                TaskTracer.onCallbackEnd(this);
+            }
+        }, () -> TaskTracer.onCallbackDropped(this));
+
+        if (pending) {
+            TaskTracer.onCallbackPending(this);
+        }
+    }
+
     void setResult(T result) {
         synchronized (this) {
             mState = State.Finished;
             mResult = result;
+            cancelDeadline();
         }
+        mSettledTimeNs = System.nanoTime();
+        TaskTracer.onTaskResult(this, null);
 
-        mCallbackQueue.run(mCallbackTime, () -> {
-
+        runCallback(() -> {
             if (isCanceled()) {
                 handleCanceled();
             } else {
@@ -424,10 +1165,16 @@ public class BackgroundTask<T> {
         synchronized (this) {
             mState = State.Finished;
             mError = error;
+            cancelDeadline();
+        }
+        if (mSettledTimeNs == 0) {
+            mSettledTimeNs = System.nanoTime();
         }
+        TaskTracer.onTaskResult(this, error);
 
-        mCallbackQueue.run(mCallbackTime, () -> {
-            if (isCanceled()) {
+        runCallback(() -> {
+            // 強制終了はキャンセルではなくエラーとして扱う
+            if (isCanceled() && error != mAbortError) {
                 handleCanceled();
             } else {
                 handleFailed(error);
@@ -464,6 +1211,25 @@ public class BackgroundTask<T> {
         void call(Exception it, BackgroundTask<T> task);
     }
 
+    /**
+     * 進捗通知のコールバックを記述する
+     */
+    public interface ProgressAction<T> {
+        void call(Object progress, BackgroundTask<T> task);
+    }
+
+    /**
+     * 分割された待機処理を記述する
+     */
+    private interface Blocking {
+        /**
+         * 最大sliceMsだけ待機する
+         *
+         * @return 待機が完了した場合true
+         */
+        boolean call(long sliceMs) throws InterruptedException;
+    }
+
     /**
      * 各種チェック用のコールバック関数
      * <p>
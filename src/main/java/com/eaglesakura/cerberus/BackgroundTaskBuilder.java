@@ -1,16 +1,21 @@
 package com.eaglesakura.cerberus;
 
 import com.eaglesakura.cerberus.error.TaskCanceledException;
+import com.eaglesakura.cerberus.error.TaskRejectedException;
+import com.eaglesakura.cerberus.error.TaskTimeoutException;
 import com.eaglesakura.cerberus.lambda.Action1;
 import com.eaglesakura.cerberus.lambda.CancelCallback;
 
 import android.app.Activity;
 import android.app.Dialog;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.os.CancellationSignal;
 
+import java.util.concurrent.TimeUnit;
+
 import io.reactivex.Observable;
 import io.reactivex.ObservableEmitter;
 import io.reactivex.android.schedulers.AndroidSchedulers;
@@ -35,7 +40,7 @@ public class BackgroundTaskBuilder<T> {
     /**
      * Task
      */
-    private BackgroundTask mTask = new BackgroundTask<>();
+    final BackgroundTask mTask = new BackgroundTask<>();
 
     /**
      * タスクをスタート済みであればtrue
@@ -44,9 +49,35 @@ public class BackgroundTaskBuilder<T> {
 
     private BackgroundTask.Async<T> mAsyncTask;
 
+    /**
+     * 失敗時の再試行条件
+     */
+    private RetryPolicy mRetryPolicy;
+
+    /**
+     * 直前の失敗で再試行を行う場合はtrue
+     */
+    private volatile boolean mRetrying;
+
+    /**
+     * 流量制限のキー
+     */
+    private String mRateLimitKey;
+
+    /**
+     * 流量制限の実行権を予約し、まだキューに受け付けられていない場合はtrue
+     */
+    private boolean mRateLimitReserved;
+
+    /**
+     * 再試行・流量制限・キューの空き待ちによって実行開始を遅らせた場合はtrue
+     */
+    private boolean mDeferred;
+
     public BackgroundTaskBuilder(PendingCallbackQueue subscriptionController) {
         mController = subscriptionController;
         mTask.mCallbackQueue = mController;
+        mTask.mOrigin = SlowCallbackMonitor.captureOrigin();
     }
 
     /**
@@ -118,6 +149,63 @@ public class BackgroundTaskBuilder<T> {
                 cancelSignal(task -> !dialog.isShowing());
     }
 
+    /**
+     * タスクの実行期限を指定する。
+     * <p>
+     * start()から指定時間が経過しても完了しない場合、タスクは {@link TaskTimeoutException} で失敗する。
+     * 実行中の非同期処理はキャンセル状態となり、スレッドに割り込みがかけられる。
+     */
+    public BackgroundTaskBuilder<T> timeout(long time, TimeUnit unit) {
+        mTask.mDeadlineMs = unit.toMillis(time);
+        return this;
+    }
+
+    /**
+     * 失敗時の再試行条件を指定する。
+     * <p>
+     * 再試行までの待ち時間はタイマーで管理され、その間スレッドは解放される。
+     * 待ち時間の間にキャンセルされた場合、再試行は行われない。
+     */
+    public BackgroundTaskBuilder<T> retry(RetryPolicy policy) {
+        mRetryPolicy = policy;
+        return this;
+    }
+
+    /**
+     * タグを指定する。
+     * <p>
+     * タグは {@link TaskCpuAccounting} の集計に使用される。
+     * 同じ種類の処理には同じタグを指定する。
+     */
+    public BackgroundTaskBuilder<T> tag(String tag) {
+        mTask.mTag = tag;
+        return this;
+    }
+
+    /**
+     * 優先度を指定する。
+     * <p>
+     * 実行待ちキューが {@link QueuePolicy#ShedLowestPriority} で溢れた場合、値の小さいタスクから破棄される。
+     * デフォルトは0。
+     */
+    public BackgroundTaskBuilder<T> priority(int priority) {
+        mTask.mPriority = priority;
+        return this;
+    }
+
+    /**
+     * 流量制限のキーを指定する。
+     * <p>
+     * 制限は {@link ExecuteTargetSettings#setRateLimit(String, double, int)} で設定する。
+     * 制限を超えたタスクはスレッドを占有せずに実行待ちとなる。
+     * 実行待ちの間にキャンセルされた場合、予約していた実行権は返却される。
+     * {@link ExecuteTarget} ごとの制限が設定されている場合、両方の制限を満たすまで待つ。
+     */
+    public BackgroundTaskBuilder<T> rateLimit(String key) {
+        mRateLimitKey = key;
+        return this;
+    }
+
     /**
      * タスク名を指定する。
      * <p>
@@ -193,6 +281,30 @@ public class BackgroundTaskBuilder<T> {
         return this;
     }
 
+    /**
+     * 進捗通知時の処理を記述する
+     *
+     * 進捗は {@link BackgroundTask#publishProgress(Object)} で通知する。
+     */
+    public BackgroundTaskBuilder<T> progressed(BackgroundTask.ProgressAction<T> callback) {
+        mTask.progressed(callback);
+        return this;
+    }
+
+    /**
+     * 進捗通知の最短間隔を指定する。
+     * <p>
+     * 間隔内に通知された進捗はまとめられ、最新の値のみが配送される。デフォルトは1フレーム(16ms)。
+     */
+    public BackgroundTaskBuilder<T> progressInterval(long intervalMs) {
+        mTask.mProgressIntervalMs = Math.max(0, intervalMs);
+        return this;
+    }
+
+    public BackgroundTaskBuilder<T> progressed(Action1<Object> action) {
+        return progressed((progress, task) -> action.action(progress));
+    }
+
     public BackgroundTaskBuilder<T> completed(Runnable action) {
         return completed((result, task) -> action.run());
     }
@@ -217,6 +329,253 @@ public class BackgroundTaskBuilder<T> {
         return mStartedTask;
     }
 
+    /**
+     * 非同期処理の実行結果をスレッド管理へ通知する
+     *
+     * @param inFlight 非同期処理の開始時点の同時実行数
+     */
+    private void onAsyncFinished(long startTime, int inFlight, Exception error) {
+        mTask.onFinished(mThreadTarget);
+        TaskTracer.onTaskFinished(mTask);
+        TaskWatchdog.onTaskFinished(mTask, mThreadTarget);
+        TaskCpuAccounting.onTaskFinished(mTask, mThreadTarget, System.nanoTime() - startTime);
+        boolean failed = (error != null) && !mTask.isCanceled() && !(error instanceof TaskCanceledException);
+        mController.getThreadController().onTaskFinished(mThreadTarget, System.nanoTime() - startTime, inFlight, failed);
+    }
+
+    /**
+     * 非同期処理を終えたスレッドを切り離す
+     */
+    private void releaseWorker() {
+        synchronized (mTask) {
+            mTask.mWorkerThread = null;
+        }
+    }
+
+    /**
+     * 再試行を行う場合はtrue
+     */
+    private boolean isRetryable(Exception error) {
+        return mRetryPolicy != null
+                && !mTask.isCanceled()
+                && mRetryPolicy.isRetryable(mTask.mRetryCount + 2, error);
+    }
+
+    /**
+     * 待ち時間の後に再試行する
+     *
+     * 待ち時間の間、スレッドは占有しない。
+     */
+    private void scheduleRetry() {
+        ++mTask.mRetryCount;
+        synchronized (mTask) {
+            mTask.mState = BackgroundTask.State.Pending;
+            mTask.resetScope();
+        }
+        schedule(this::dispatchWhenPermitted, mRetryPolicy.getDelayMs(mTask.mRetryCount));
+    }
+
+    /**
+     * 待ち時間の後、UIThreadで処理を行う
+     *
+     * 待ち時間の間、タスクは実行待ちとして扱われる。
+     */
+    private void schedule(Runnable action, long delayMs) {
+        mDeferred = true;
+        TaskTimer.getInstance().schedule(() -> {
+            mController.sHandler.post(action);
+        }, delayMs);
+    }
+
+    /**
+     * 流量制限を満たしてから非同期処理を実行対象のスレッドへ投げる
+     *
+     * UIThreadから呼び出される。
+     */
+    private void dispatchWhenPermitted() {
+        if (mTask.isFinished() || (mDeferred && mTask.isCanceled())) {
+            // 実行権を消費せずに終了させる
+            dispatch();
+            return;
+        }
+
+        long waitMs = ExecuteTargetSettings.reserveRateLimit(mThreadTarget, mRateLimitKey);
+        mRateLimitReserved = true;
+        if (waitMs > 0) {
+            schedule(this::dispatch, waitMs);
+        } else {
+            dispatch();
+        }
+    }
+
+    /**
+     * 実行されなかったタスクの、流量制限の予約を返却する
+     */
+    private void refundRateLimit() {
+        if (mRateLimitReserved) {
+            mRateLimitReserved = false;
+            ExecuteTargetSettings.refundRateLimit(mThreadTarget, mRateLimitKey);
+        }
+    }
+
+    /**
+     * 子タスクの待ち合わせと、親スコープへの通知を行う
+     *
+     * @param error 非同期処理が失敗した場合はその例外
+     */
+    private void settleAsync(Exception error) throws Exception {
+        try {
+            TaskScope scope = mTask.getScope();
+            if (scope != null) {
+                scope.join(error);
+            } else if (error != null) {
+                throw error;
+            }
+        } catch (Exception e) {
+            error = e;
+            mRetrying = isRetryable(e);
+            throw e;
+        } finally {
+            if (mTask.mParentScope != null && !mRetrying) {
+                mTask.mParentScope.onChildSettled(mTask, error);
+            }
+        }
+    }
+
+    /**
+     * 非同期処理を実行対象のスレッドへ投げる
+     *
+     * UIThreadから呼び出される。
+     */
+    private void dispatch() {
+        ThreadControllerImpl threadController = mController.getThreadController();
+        if (mTask.isFinished()) {
+            // 実行待ちの間に強制終了された
+            threadController.releaseQueueSlot(mThreadTarget, mTask);
+            refundRateLimit();
+            return;
+        } else if (mDeferred && mTask.isCanceled()) {
+            // 実行待ちの間にキャンセルされた
+            threadController.releaseQueueSlot(mThreadTarget, mTask);
+            refundRateLimit();
+            if (mTask.mParentScope != null) {
+                mTask.mParentScope.onChildSettled(mTask, null);
+            }
+            mTask.setError(new TaskCanceledException());
+            return;
+        }
+
+        if (!threadController.acquireQueueSlot(mThreadTarget, mTask, this::dispatch)) {
+            // キューに空きができた時点で、再度呼び出される
+            mDeferred = true;
+            return;
+        }
+
+        TaskRejectedException rejected = threadController.admit(mThreadTarget, mTask);
+        if (rejected != null) {
+            refundRateLimit();
+            if (mTask.mParentScope != null) {
+                mTask.mParentScope.onChildSettled(mTask, rejected);
+            }
+            mTask.setError(rejected);
+            return;
+        }
+
+        // 流量制限の実行権は、ここで消費される
+        mRateLimitReserved = false;
+
+        mObservable = Observable.create((ObservableEmitter<T> it) -> {
+            synchronized (mTask) {
+                mTask.mState = BackgroundTask.State.Running;
+                mTask.mWorkerThread = Thread.currentThread();
+                bindThreadName();
+            }
+            mTask.onStarted(mThreadTarget);
+            TaskTracer.onTaskRunning(mTask);
+            TaskWatchdog.onTaskRunning(mTask, mThreadTarget);
+            TaskCpuAccounting.onTaskRunning(mTask);
+
+            //  非同期処理中はロックを外す
+            T result;
+            final long START_TIME = System.nanoTime();
+            final int IN_FLIGHT = mController.getThreadController().getInFlight(mThreadTarget);
+            try {
+                try {
+                    result = mAsyncTask.call((BackgroundTask<T>) mTask);
+                } catch (Exception e) {
+                    onAsyncFinished(START_TIME, IN_FLIGHT, e);
+                    settleAsync(e);
+                    throw e;
+                }
+                onAsyncFinished(START_TIME, IN_FLIGHT, null);
+                settleAsync(null);
+
+                if (mTask.isCanceled()) {
+                    throw new TaskCanceledException();
+                }
+            } catch (Exception e) {
+                releaseWorker();
+                if (!it.isDisposed()) {
+                    try {
+                        it.onError(e);
+                    } catch (UndeliverableException ee) {
+                        // disposed!
+                    }
+                }
+                return;
+            }
+
+            releaseWorker();
+
+            // 実行完了をコールする
+            synchronized (mTask) {
+                if (it.isDisposed()) {
+                    return;
+                }
+                it.onNext(result);
+                it.onComplete();
+            }
+        })
+                .subscribeOn(mController.getThreadController().getScheduler(mThreadTarget, mTask))
+                .observeOn(AndroidSchedulers.mainThread());
+        mTask.onEnqueued();
+        TaskTracer.onTaskQueued(mTask);
+        mTask.mSubscription = mObservable.subscribe(
+                // next = completeed
+                next -> {
+                    mTask.mSubscription.dispose();
+                    mController.remove(mTask.mSubscription);
+                    mTask.mSubscription = null;
+                    mTask.setResult(next);
+                },
+                // error
+                error -> {
+                    mTask.mSubscription.dispose();
+                    mController.remove(mTask.mSubscription);
+                    mTask.mSubscription = null;
+                    if (mRetrying) {
+                        mRetrying = false;
+                        if (!mTask.isCanceled()) {
+                            scheduleRetry();
+                            return;
+                        } else if (mTask.mParentScope != null) {
+                            // 再試行前にキャンセルされたので、親へ通知する
+                            mTask.mParentScope.onChildSettled(mTask, (Exception) error);
+                        }
+                    }
+
+                    if (error instanceof Exception) {
+                        mTask.setError(((Exception) error));
+                    } else {
+                        throw (Error) error;
+                    }
+                }
+        );
+
+        // 購読対象に追加
+        mController.add(mTask.mCallbackTime, mTask.mSubscription);
+    }
+
     /**
      * セットアップを完了し、処理を開始する
      */
@@ -231,70 +590,28 @@ public class BackgroundTaskBuilder<T> {
         }
 
         mStartedTask = true;
+        mTask.mExecuteTarget = mThreadTarget;
+        mTask.mStartedUptimeMs = SystemClock.uptimeMillis();
+        TaskRegistry.register(mTask);
+        TaskTracer.onTaskStarted(mTask, mThreadTarget);
+
+        // キューの枠を確保する、UIThread以外ではキューが溢れている間は呼び出し元をブロックする
+        mController.getThreadController().reserveQueueSlot(mThreadTarget, mTask);
+
+        if (mTask.mParentScope != null) {
+            mTask.mParentScope.onChildStarted(mTask);
+        }
         // 開始タイミングをズラす
         mController.sHandler.post(() -> {
             LifecycleStateDump dumpState = mController.getCurrentState();
             BackgroundTask.Signal signal = task -> mController.isCanceled(mTask.mCallbackTime, dumpState);
             mTask.mCancelSignals.add(signal);
-            mObservable = Observable.create((ObservableEmitter<T> it) -> {
-                synchronized (mTask) {
-                    mTask.mState = BackgroundTask.State.Running;
-                    bindThreadName();
-                }
-
-                //  非同期処理中はロックを外す
-                T result;
-                try {
-                    result = mAsyncTask.call((BackgroundTask<T>) mTask);
-
-                    if (mTask.isCanceled()) {
-                        throw new TaskCanceledException();
-                    }
-                } catch (Exception e) {
-                    if (!it.isDisposed()) {
-                        try {
-                            it.onError(e);
-                        } catch (UndeliverableException ee) {
-                            // disposed!
-                        }
-                    }
-                    return;
-                }
-
-                // 実行完了をコールする
-                synchronized (mTask) {
-                    if (it.isDisposed()) {
-                        return;
-                    }
-                    it.onNext(result);
-                    it.onComplete();
-                }
-            })
-                    .subscribeOn(mController.getThreadController().getScheduler(mThreadTarget))
-                    .observeOn(AndroidSchedulers.mainThread());
-            mTask.mSubscription = mObservable.subscribe(
-                    // next = completeed
-                    next -> {
-                        mTask.mSubscription.dispose();
-                        mController.remove(mTask.mSubscription);
-                        mTask.mSubscription = null;
-                        mTask.setResult(next);
-                    },
-                    // error
-                    error -> {
-                        mTask.mSubscription.dispose();
-                        mController.remove(mTask.mSubscription);
-                        mTask.mSubscription = null;
-                        if (error instanceof Exception) {
-                            mTask.setError(((Exception) error));
-                        } else {
-                            throw (Error) error;
-                        }
-                    }
-            );
-
-            // 購読対象に追加
-            mController.add(mTask.mCallbackTime, mTask.mSubscription);
+            if (mTask.mDeadlineMs > 0) {
+                mTask.mDeadlineTimer = TaskTimer.getInstance().schedule(() -> {
+                    mController.sHandler.post(() -> mTask.abort(new TaskTimeoutException("Task timeout : " + mTask.mDeadlineMs + "ms")));
+                }, mTask.mDeadlineMs);
+            }
+            dispatchWhenPermitted();
         });
         return mTask;
     }
@@ -0,0 +1,105 @@
+package com.eaglesakura.cerberus;
+
+/**
+ * CallbackTimeごとのコールバックの保留・実行状況
+ *
+ * {@link PendingCallbackQueue#getCallbackStats(CallbackTime)} でPendingCallbackQueueごと、
+ * {@link PendingCallbackQueue#getGlobalCallbackStats(CallbackTime)} でプロセス全体の値を取得する。
+ * バックグラウンドで保留され続けるコールバックが多い画面は、不要な処理を積んでいる可能性がある。
+ */
+public class CallbackStats {
+
+    private final CallbackTime mCallbackTime;
+
+    private final int mPendingCount;
+
+    private final long mOldestPendingMs;
+
+    private final long mDeliveredCount;
+
+    private final long mCanceledCount;
+
+    private final long mFlushCount;
+
+    private final long mFlushTotalNs;
+
+    private final long mFlushMaxNs;
+
+    CallbackStats(CallbackTime callbackTime, int pendingCount, long oldestPendingMs, long deliveredCount, long canceledCount, long flushCount, long flushTotalNs, long flushMaxNs) {
+        mCallbackTime = callbackTime;
+        mPendingCount = pendingCount;
+        mOldestPendingMs = oldestPendingMs;
+        mDeliveredCount = deliveredCount;
+        mCanceledCount = canceledCount;
+        mFlushCount = flushCount;
+        mFlushTotalNs = flushTotalNs;
+        mFlushMaxNs = flushMaxNs;
+    }
+
+    public CallbackTime getCallbackTime() {
+        return mCallbackTime;
+    }
+
+    /**
+     * 保留中のコールバック数
+     */
+    public int getPendingCount() {
+        return mPendingCount;
+    }
+
+    /**
+     * 最も長く保留されているコールバックの待ち時間
+     *
+     * 保留中のコールバックが無ければ0となる。
+     */
+    public long getOldestPendingMs() {
+        return mOldestPendingMs;
+    }
+
+    /**
+     * 実行されたコールバック数
+     */
+    public long getDeliveredCount() {
+        return mDeliveredCount;
+    }
+
+    /**
+     * ライフサイクルの変化によって破棄されたコールバック数
+     */
+    public long getCanceledCount() {
+        return mCanceledCount;
+    }
+
+    /**
+     * 保留されたコールバックをまとめて実行した回数
+     */
+    public long getFlushCount() {
+        return mFlushCount;
+    }
+
+    /**
+     * 保留されたコールバックをまとめて実行するのにかかった時間の平均
+     */
+    public double getMeanFlushMs() {
+        return mFlushCount > 0 ? (double) mFlushTotalNs / mFlushCount / 1000000.0 : 0;
+    }
+
+    /**
+     * 保留されたコールバックをまとめて実行するのにかかった時間の最大
+     */
+    public double getMaxFlushMs() {
+        return (double) mFlushMaxNs / 1000000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "CallbackStats{" + mCallbackTime +
+                " pending=" + mPendingCount +
+                " oldest=" + mOldestPendingMs + "ms" +
+                " delivered=" + mDeliveredCount +
+                " canceled=" + mCanceledCount +
+                " flush=" + mFlushCount +
+                " maxFlush=" + getMaxFlushMs() + "ms" +
+                "}";
+    }
+}
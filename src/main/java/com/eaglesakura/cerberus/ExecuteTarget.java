@@ -8,6 +8,11 @@ public enum ExecuteTarget {
      * 直列化されたパイプラインで制御する
      */
     LocalQueue {
+        @Override
+        boolean isSerial() {
+            return true;
+        }
+
         @Override
         int getKeepAliveMs() {
             return 1000 * 5;
@@ -38,6 +43,11 @@ public enum ExecuteTarget {
      * プロセス内で共有される直列化された処理
      */
     GlobalQueue {
+        @Override
+        boolean isSerial() {
+            return true;
+        }
+
         @Override
         int getKeepAliveMs() {
             return 1000 * 3;
@@ -77,22 +87,29 @@ public enum ExecuteTarget {
 
         @Override
         int getThreadPoolNum() {
-            return ExecuteTargetSettings.sNetworkThreads;
+            return ExecuteTargetSettings.getNetworkThreads();
+        }
+
+        @Override
+        AdaptiveConcurrencyLimit getConcurrencyLimit() {
+            return ExecuteTargetSettings.sNetworkConcurrencyLimit;
         }
     },
 
     /**
      * 専用スレッドを生成する
+     *
+     * スレッドは上限まで必要に応じて生成・キャッシュされ、上限を超えたタスクは実行待ちとなる。
      */
     NewThread {
         @Override
         int getKeepAliveMs() {
-            return 0;
+            return 1000 * 3;
         }
 
         @Override
         int getThreadPoolNum() {
-            return 0;
+            return ExecuteTargetSettings.sNewThreadThreads;
         }
     },
 
@@ -109,8 +126,34 @@ public enum ExecuteTarget {
         int getThreadPoolNum() {
             return 0;
         }
+    },
+
+    /**
+     * アプリが暇な時に処理する
+     *
+     * メインスレッドがアイドル状態になり、他のExecuteTargetのタスクが無くなるまで保留され、
+     * その後少しずつ低優先度のスレッドで処理される。
+     * キャッシュの構築や統計情報の送信等、後回しにできる処理に使用する。
+     */
+    Idle {
+        @Override
+        int getKeepAliveMs() {
+            return 1000 * 3;
+        }
+
+        @Override
+        int getThreadPoolNum() {
+            return 1;
+        }
     };
 
+    /**
+     * 直列に処理するExecuteTargetであればtrue
+     */
+    boolean isSerial() {
+        return false;
+    }
+
     /**
      * スレッドキャッシュ時間を取得する
      */
@@ -120,4 +163,13 @@ public enum ExecuteTarget {
      * 最大スレッド数を取得する
      */
     abstract int getThreadPoolNum();
+
+    /**
+     * 同時実行数の自動調整を取得する
+     *
+     * 自動調整を行わない場合はnull
+     */
+    AdaptiveConcurrencyLimit getConcurrencyLimit() {
+        return null;
+    }
 }
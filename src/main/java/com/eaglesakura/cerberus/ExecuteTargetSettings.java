@@ -1,5 +1,12 @@
 package com.eaglesakura.cerberus;
 
+import android.support.annotation.NonNull;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
 /**
  *
  */
@@ -24,6 +31,76 @@ public class ExecuteTargetSettings {
      */
     static int sNetworkThreads = 4;
 
+    /**
+     * {@link ExecuteTarget#NewThread} の最大スレッド数
+     */
+    static int sNewThreadThreads = (sCpuCoreCount * 10);
+
+    /**
+     * プロセス内でCerberusが生成するスレッドの上限
+     *
+     * デフォルトでは上限を設けない。
+     */
+    static int sMaxThreads = Integer.MAX_VALUE;
+
+    /**
+     * スレッドの優先度を変更しない
+     */
+    public static final int THREAD_PRIORITY_INHERIT = Integer.MIN_VALUE;
+
+    /**
+     * ExecuteTargetごとのスレッドのスタックサイズ
+     * <p>
+     * 0の場合はシステムのデフォルトとなる。
+     */
+    static final long[] sThreadStackSizes = new long[ExecuteTarget.values().length];
+
+    /**
+     * ExecuteTargetごとのスレッドの優先度
+     */
+    static final int[] sThreadPriorities = new int[ExecuteTarget.values().length];
+
+    /**
+     * ExecuteTargetごとのスレッド生成処理
+     */
+    static final Map<ExecuteTarget, ThreadFactory> sThreadFactories = new EnumMap<>(ExecuteTarget.class);
+
+    /**
+     * ExecuteTargetごとの常駐させるスレッド数
+     */
+    static final int[] sMinWarmThreads = new int[ExecuteTarget.values().length];
+
+    /**
+     * ExecuteTargetごとのスレッドキャッシュ時間
+     * <p>
+     * 負の場合は {@link ExecuteTarget} のデフォルトとなる。
+     */
+    static final long[] sKeepAliveMs = new long[ExecuteTarget.values().length];
+
+    static {
+        for (int i = 0; i < sThreadPriorities.length; ++i) {
+            sThreadPriorities[i] = THREAD_PRIORITY_INHERIT;
+            sKeepAliveMs[i] = -1;
+        }
+    }
+
+    /**
+     * ネットワークスレッド数の自動調整
+     * <p>
+     * nullの場合は {@link #sNetworkThreads} で固定される。
+     */
+    static AdaptiveConcurrencyLimit sNetworkConcurrencyLimit;
+
+    /**
+     * ExecuteTarget / ユーザ指定のキーごとの流量制限
+     */
+    static final Map<Object, TokenBucket> sRateLimits = new HashMap<>();
+
+    /**
+     * ExecuteTargetごとの実行待ちキューの上限
+     */
+    static final Map<ExecuteTarget, QueueLimit> sQueueLimits = new EnumMap<>(ExecuteTarget.class);
+
     public static void setLocalParallelsThreads(int localParallelsThreads) {
         sLocalParallelsThreads = localParallelsThreads;
     }
@@ -36,6 +113,277 @@ public class ExecuteTargetSettings {
         sNetworkThreads = networkThreads;
     }
 
+    /**
+     * {@link ExecuteTarget#NewThread} の最大スレッド数を指定する。
+     * <p>
+     * スレッドは必要に応じて生成され、上限を超えたタスクは実行待ちとなる。
+     */
+    public static void setNewThreadThreads(int newThreadThreads) {
+        sNewThreadThreads = newThreadThreads;
+    }
+
+    /**
+     * プロセス内でCerberusが生成するスレッドの上限を指定する。
+     * <p>
+     * 全てのExecuteTargetの合計に対して適用され、上限に達したタスクはスレッドが空くまで実行待ちとなる。
+     * デフォルトでは上限を設けない。
+     * <p>
+     * 上限に達した状態で、スレッドを占有したまま他のタスクを待つとデッドロックとなる。
+     * {@link TaskScope} の子タスクの待ち合わせや、{@link BackgroundTask#await(java.util.concurrent.CountDownLatch, long)} 等で
+     * 他のタスクの完了を待つ場合は、待たれる側のタスクが実行できるだけの上限を指定すること。
+     */
+    public static void setMaxThreads(int maxThreads) {
+        sMaxThreads = Math.max(1, maxThreads);
+    }
+
+    public static int getMaxThreads() {
+        return sMaxThreads;
+    }
+
+    /**
+     * Cerberusが生成し、生存しているスレッド数を取得する
+     */
+    public static int getThreadCount() {
+        return TaskThreadFactory.sThreadCount.get();
+    }
+
+    /**
+     * ExecuteTargetごとに、タスクが無い間も常駐させるスレッド数を指定する。
+     * <p>
+     * 常駐するスレッドは最初のタスクの実行時、または {@link #prestart(ExecuteTarget, int)} で生成される。
+     * デフォルトは0。
+     */
+    public static void setMinWarmThreads(@NonNull ExecuteTarget target, int threads) {
+        sMinWarmThreads[target.ordinal()] = Math.max(0, threads);
+    }
+
+    static int getMinWarmThreads(ExecuteTarget target) {
+        return sMinWarmThreads[target.ordinal()];
+    }
+
+    /**
+     * ExecuteTargetごとに、タスクが無くなったスレッドをキャッシュしておく時間を指定する。
+     * <p>
+     * 負の値を指定した場合はデフォルトに戻る。
+     */
+    public static void setKeepAliveMs(@NonNull ExecuteTarget target, long keepAliveMs) {
+        sKeepAliveMs[target.ordinal()] = keepAliveMs;
+    }
+
+    static long getKeepAliveMs(ExecuteTarget target) {
+        long keepAliveMs = sKeepAliveMs[target.ordinal()];
+        return keepAliveMs >= 0 ? keepAliveMs : target.getKeepAliveMs();
+    }
+
+    /**
+     * プロセス共有のスレッドを事前に生成しておく。
+     * <p>
+     * アプリの起動時や画面遷移の直前に呼び出すことで、最初のタスクでのスレッド生成を避けられる。
+     * 生成したスレッドは、常駐させるスレッド数を超える分はキャッシュ時間が過ぎると破棄される。
+     * {@link ExecuteTarget#LocalQueue} / {@link ExecuteTarget#LocalParallel} は {@link PendingCallbackQueue#prestart(ExecuteTarget, int)} を使用する。
+     *
+     * @param threads 生成するスレッド数、最大スレッド数を超える分は無視される
+     */
+    public static void prestart(@NonNull ExecuteTarget target, int threads) {
+        ThreadControllerImpl.prestartShared(target, threads);
+    }
+
+    /**
+     * ExecuteTargetごとのスレッドのスタックサイズを指定する。
+     * <p>
+     * 0を指定した場合はシステムのデフォルトとなる。
+     * {@link #setThreadFactory(ExecuteTarget, ThreadFactory)} を指定した場合は無視される。
+     *
+     * @param stackSize スタックサイズ(byte)
+     */
+    public static void setThreadStackSize(@NonNull ExecuteTarget target, long stackSize) {
+        sThreadStackSizes[target.ordinal()] = Math.max(0, stackSize);
+    }
+
+    static long getThreadStackSize(ExecuteTarget target) {
+        return sThreadStackSizes[target.ordinal()];
+    }
+
+    /**
+     * ExecuteTargetごとのスレッドの優先度を指定する。
+     *
+     * @param priority {@link android.os.Process#setThreadPriority(int)} に渡す値、変更しない場合は {@link #THREAD_PRIORITY_INHERIT}
+     */
+    public static void setThreadPriority(@NonNull ExecuteTarget target, int priority) {
+        sThreadPriorities[target.ordinal()] = priority;
+    }
+
+    static int getThreadPriority(ExecuteTarget target) {
+        return sThreadPriorities[target.ordinal()];
+    }
+
+    /**
+     * ExecuteTargetごとのスレッド生成処理を指定する。
+     * <p>
+     * スレッド数の上限は指定した場合も適用される。nullを指定した場合はデフォルトに戻る。
+     */
+    public static void setThreadFactory(@NonNull ExecuteTarget target, ThreadFactory factory) {
+        synchronized (sThreadFactories) {
+            if (factory != null) {
+                sThreadFactories.put(target, factory);
+            } else {
+                sThreadFactories.remove(target);
+            }
+        }
+    }
+
+    static ThreadFactory getThreadFactory(ExecuteTarget target) {
+        synchronized (sThreadFactories) {
+            return sThreadFactories.get(target);
+        }
+    }
+
+    /**
+     * ExecuteTargetごとの流量制限を指定する。
+     * <p>
+     * 制限を超えたタスクはスレッドを占有せずに実行待ちとなり、実行可能になった順に処理される。
+     *
+     * @param permitsPerSecond 1秒あたりに開始できるタスク数
+     * @param burst            連続して開始できるタスク数
+     */
+    public static void setRateLimit(@NonNull ExecuteTarget target, double permitsPerSecond, int burst) {
+        synchronized (sRateLimits) {
+            sRateLimits.put(target, new TokenBucket(permitsPerSecond, burst));
+        }
+    }
+
+    /**
+     * キーごとの流量制限を指定する。
+     * <p>
+     * キーは {@link BackgroundTaskBuilder#rateLimit(String)} で指定したタスクに適用される。
+     *
+     * @param permitsPerSecond 1秒あたりに開始できるタスク数
+     * @param burst            連続して開始できるタスク数
+     */
+    public static void setRateLimit(@NonNull String key, double permitsPerSecond, int burst) {
+        synchronized (sRateLimits) {
+            sRateLimits.put(key, new TokenBucket(permitsPerSecond, burst));
+        }
+    }
+
+    public static void clearRateLimit(@NonNull ExecuteTarget target) {
+        synchronized (sRateLimits) {
+            sRateLimits.remove(target);
+        }
+    }
+
+    public static void clearRateLimit(@NonNull String key) {
+        synchronized (sRateLimits) {
+            sRateLimits.remove(key);
+        }
+    }
+
+    /**
+     * 流量制限の実行権を予約する
+     *
+     * @return 実行可能になるまでの待ち時間
+     */
+    static long reserveRateLimit(ExecuteTarget target, String key) {
+        TokenBucket targetBucket;
+        TokenBucket keyBucket;
+        synchronized (sRateLimits) {
+            if (sRateLimits.isEmpty()) {
+                return 0;
+            }
+            targetBucket = sRateLimits.get(target);
+            keyBucket = (key != null) ? sRateLimits.get(key) : null;
+        }
+
+        long result = 0;
+        if (targetBucket != null) {
+            result = targetBucket.reserve();
+        }
+        if (keyBucket != null) {
+            result = Math.max(result, keyBucket.reserve());
+        }
+        return result;
+    }
+
+    /**
+     * 実行されなかったタスクの、流量制限の実行権を返却する
+     */
+    static void refundRateLimit(ExecuteTarget target, String key) {
+        TokenBucket targetBucket;
+        TokenBucket keyBucket;
+        synchronized (sRateLimits) {
+            targetBucket = sRateLimits.get(target);
+            keyBucket = (key != null) ? sRateLimits.get(key) : null;
+        }
+
+        if (targetBucket != null) {
+            targetBucket.refund();
+        }
+        if (keyBucket != null) {
+            keyBucket.refund();
+        }
+    }
+
+    /**
+     * ON_RESUME状態のPendingCallbackQueueに与えられる重み
+     */
+    static int sForegroundWeight = 4;
+
+    /**
+     * ON_RESUME状態のPendingCallbackQueueに与える、スケジューリングの重みを指定する。
+     * <p>
+     * スレッドプールの実行待ちタスクはPendingCallbackQueueごとに分けられ、重み付きラウンドロビンで実行される。
+     * 重みが4であれば、他のPendingCallbackQueueの1タスクに対して4タスクが実行される。
+     * デフォルトは4。
+     */
+    public static void setForegroundWeight(int weight) {
+        sForegroundWeight = Math.max(1, weight);
+    }
+
+    public static int getForegroundWeight() {
+        return sForegroundWeight;
+    }
+
+    /**
+     * 実行待ちキューの上限を指定する。
+     * <p>
+     * 上限はプロセス共有のキューであればプロセス全体、ローカルのキューであればPendingCallbackQueueごとに適用される。
+     * {@link ExecuteTarget#MainThread} / {@link ExecuteTarget#Idle} には適用されない。
+     *
+     * @param maxQueuedTasks 実行待ちにできるタスク数
+     * @param policy         上限に達した場合の挙動
+     */
+    public static void setQueueLimit(@NonNull ExecuteTarget target, int maxQueuedTasks, @NonNull QueuePolicy policy) {
+        synchronized (sQueueLimits) {
+            sQueueLimits.put(target, new QueueLimit(Math.max(1, maxQueuedTasks), policy));
+        }
+    }
+
+    public static void clearQueueLimit(@NonNull ExecuteTarget target) {
+        synchronized (sQueueLimits) {
+            sQueueLimits.remove(target);
+        }
+    }
+
+    static QueueLimit getQueueLimit(ExecuteTarget target) {
+        synchronized (sQueueLimits) {
+            return sQueueLimits.get(target);
+        }
+    }
+
+    /**
+     * キューの上限によって受け付けられなかったタスク数を取得する
+     */
+    public static long getRejectedTaskCount(@NonNull ExecuteTarget target) {
+        return ThreadControllerImpl.sRejectedTasks.get(target.ordinal());
+    }
+
+    /**
+     * キューの上限によって破棄された実行待ちタスク数を取得する
+     */
+    public static long getShedTaskCount(@NonNull ExecuteTarget target) {
+        return ThreadControllerImpl.sShedTasks.get(target.ordinal());
+    }
+
     public static int getCpuCoreCount() {
         return sCpuCoreCount;
     }
@@ -48,7 +396,44 @@ public class ExecuteTargetSettings {
         return sGlobalParallelsThreads;
     }
 
+    /**
+     * ネットワークスレッド数を、処理時間とエラー率から自動調整させる。
+     * <p>
+     * スレッド数は {@link #getNetworkThreads()} の値から開始し、minThreads - maxThreadsの範囲で調整される。
+     * 処理時間が伸びるかエラーが発生するとスレッド数を減らし、安定していれば増やす。
+     */
+    public static void setNetworkThreadsAdaptive(int minThreads, int maxThreads) {
+        sNetworkConcurrencyLimit = new AdaptiveConcurrencyLimit(minThreads, maxThreads, sNetworkThreads);
+    }
+
+    /**
+     * ネットワークスレッド数の自動調整を止め、{@link #setNetworkThreads(int)} の値で固定する
+     */
+    public static void setNetworkThreadsFixed() {
+        sNetworkConcurrencyLimit = null;
+    }
+
+    /**
+     * 現在のネットワークスレッド数を取得する
+     * <p>
+     * 自動調整中であれば、調整後の値を返す。
+     */
     public static int getNetworkThreads() {
+        AdaptiveConcurrencyLimit limit = sNetworkConcurrencyLimit;
+        if (limit != null) {
+            return limit.getLimit();
+        }
         return sNetworkThreads;
     }
+
+    static class QueueLimit {
+        final int mMaxQueuedTasks;
+
+        final QueuePolicy mPolicy;
+
+        QueueLimit(int maxQueuedTasks, QueuePolicy policy) {
+            mMaxQueuedTasks = maxQueuedTasks;
+            mPolicy = policy;
+        }
+    }
 }
@@ -0,0 +1,165 @@
+package com.eaglesakura.cerberus;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 所有者ごとのサブキューを重み付きラウンドロビンで処理するキュー
+ *
+ * 1つの所有者が大量のタスクを積んでも、他の所有者のタスクは重みに応じた割合で取り出される。
+ * 同期は呼び出し側で行う。
+ */
+class FairTaskQueue<E> {
+
+    /**
+     * 所有者ごとのサブキュー
+     */
+    private final Map<Object, SubQueue<E>> mQueues = new HashMap<>();
+
+    /**
+     * タスクを持つサブキューの巡回順
+     */
+    private final ArrayDeque<SubQueue<E>> mRotation = new ArrayDeque<>();
+
+    private long mSequence;
+
+    private int mSize;
+
+    /**
+     * 所有者の重みを取得する
+     *
+     * 重みの分だけ、巡回ごとに連続してタスクが取り出される。
+     */
+    protected int getWeight(Object owner) {
+        return 1;
+    }
+
+    void add(Object owner, E item) {
+        SubQueue<E> queue = mQueues.get(owner);
+        if (queue == null) {
+            queue = new SubQueue<>(owner);
+            mQueues.put(owner, queue);
+            mRotation.add(queue);
+        }
+        queue.mItems.add(new Entry<>(item, mSequence++));
+        ++mSize;
+    }
+
+    /**
+     * 次に処理するタスクを取り出す
+     */
+    E poll() {
+        SubQueue<E> queue = mRotation.peekFirst();
+        if (queue == null) {
+            return null;
+        }
+
+        if (queue.mCredit <= 0) {
+            queue.mCredit = Math.max(1, getWeight(queue.mOwner));
+        }
+
+        Entry<E> entry = queue.mItems.poll();
+        --queue.mCredit;
+        --mSize;
+
+        mRotation.pollFirst();
+        if (queue.mItems.isEmpty()) {
+            queue.mCredit = 0;
+            mQueues.remove(queue.mOwner);
+        } else if (queue.mCredit > 0) {
+            // 重みの分だけ、続けて処理する
+            mRotation.addFirst(queue);
+        } else {
+            mRotation.addLast(queue);
+        }
+        return entry.mItem;
+    }
+
+    /**
+     * 最も古いタスクを取得する
+     */
+    E peekOldest() {
+        Entry<E> oldest = null;
+        for (SubQueue<E> queue : mRotation) {
+            Entry<E> head = queue.mItems.peekFirst();
+            if (oldest == null || head.mSequence < oldest.mSequence) {
+                oldest = head;
+            }
+        }
+        return oldest != null ? oldest.mItem : null;
+    }
+
+    /**
+     * 全てのタスクを積まれた順に取得する
+     */
+    List<E> items() {
+        List<Entry<E>> entries = new ArrayList<>(mSize);
+        for (SubQueue<E> queue : mRotation) {
+            entries.addAll(queue.mItems);
+        }
+        Collections.sort(entries, (a, b) -> a.mSequence < b.mSequence ? -1 : (a.mSequence == b.mSequence ? 0 : 1));
+
+        List<E> result = new ArrayList<>(entries.size());
+        for (Entry<E> entry : entries) {
+            result.add(entry.mItem);
+        }
+        return result;
+    }
+
+    boolean remove(E item) {
+        for (SubQueue<E> queue : mRotation) {
+            Iterator<Entry<E>> iterator = queue.mItems.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().mItem == item) {
+                    iterator.remove();
+                    --mSize;
+                    if (queue.mItems.isEmpty()) {
+                        mRotation.remove(queue);
+                        mQueues.remove(queue.mOwner);
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    private static class SubQueue<E> {
+        final Object mOwner;
+
+        final ArrayDeque<Entry<E>> mItems = new ArrayDeque<>();
+
+        /**
+         * 現在の巡回で取り出せる残り数
+         */
+        int mCredit;
+
+        SubQueue(Object owner) {
+            mOwner = owner;
+        }
+    }
+
+    private static class Entry<E> {
+        final E mItem;
+
+        final long mSequence;
+
+        Entry(E item, long sequence) {
+            mItem = item;
+            mSequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.eaglesakura.cerberus;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link ExecuteTarget#Idle} のタスクを保留し、アプリが暇になったタイミングで少しずつ実行する。
+ *
+ * メインスレッドのMessageQueueがアイドル状態となり、かつ他のExecuteTargetに実行中・実行待ちのタスクが無い場合のみ、
+ * {@link #BATCH_SIZE} 件ずつタスクを実行スレッドへ流す。
+ */
+class IdleDispatcher implements Executor, MessageQueue.IdleHandler {
+
+    /**
+     * 1回のアイドルで流すタスク数
+     */
+    static final int BATCH_SIZE = 2;
+
+    /**
+     * 他のタスクが動いていた場合の再確認間隔
+     */
+    static final long RETRY_INTERVAL_MS = 100;
+
+    private final ThreadControllerImpl.ThreadItem mThread;
+
+    /**
+     * 保留中のタスク
+     */
+    private final Queue<Runnable> mPendingTasks = new ArrayDeque<>();
+
+    /**
+     * 流したタスクのうち、完了していない数
+     */
+    private int mRunningTasks;
+
+    /**
+     * IdleHandlerを登録済みであればtrue
+     */
+    private boolean mRegistered;
+
+    IdleDispatcher(ThreadControllerImpl.ThreadItem thread) {
+        mThread = thread;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        synchronized (mPendingTasks) {
+            mPendingTasks.add(command);
+        }
+        PendingCallbackQueue.sHandler.post(this::register);
+    }
+
+    /**
+     * 保留中のタスク数を取得する
+     */
+    int getPendingCount() {
+        synchronized (mPendingTasks) {
+            return mPendingTasks.size();
+        }
+    }
+
+    /**
+     * メインスレッドのIdleHandlerとして登録する
+     */
+    private void register() {
+        if (mRegistered) {
+            return;
+        }
+        mRegistered = true;
+        Looper.myQueue().addIdleHandler(this);
+    }
+
+    /**
+     * アイドル状態を再確認させる
+     */
+    private void wakeUp() {
+        PendingCallbackQueue.sHandler.post(this::register);
+    }
+
+    @Override
+    public boolean queueIdle() {
+        synchronized (mPendingTasks) {
+            if (mPendingTasks.isEmpty()) {
+                mRegistered = false;
+                return false;
+            }
+
+            if (mRunningTasks > 0 || ThreadControllerImpl.isBusy(mThread)) {
+                // 優先度の高いタスクが動いているので、少し待ってから再確認する
+                mRegistered = false;
+                PendingCallbackQueue.sHandler.postDelayed(this::register, RETRY_INTERVAL_MS);
+                return false;
+            }
+
+            for (int i = 0; i < BATCH_SIZE && !mPendingTasks.isEmpty(); ++i) {
+                Runnable command = mPendingTasks.poll();
+                ++mRunningTasks;
+                mThread.getExecutor().execute(() -> {
+                    try {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        command.run();
+                    } finally {
+                        synchronized (mPendingTasks) {
+                            --mRunningTasks;
+                        }
+                        // 次のバッチはメインスレッドが再びアイドルになってから流す
+                        wakeUp();
+                    }
+                });
+            }
+
+            mRegistered = false;
+            return false;
+        }
+    }
+}
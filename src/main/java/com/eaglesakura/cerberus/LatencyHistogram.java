@@ -0,0 +1,152 @@
+package com.eaglesakura.cerberus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 処理時間の分布を記録する
+ *
+ * マイクロ秒単位の2の累乗でバケットを分け、ロックを使用せずに記録する。
+ * パーセンタイルはバケットの上限値で近似される。
+ */
+public class LatencyHistogram {
+
+    /**
+     * バケット数
+     *
+     * バケットiは [2^(i-1), 2^i) マイクロ秒を表し、最後のバケットはそれ以上の全てを含む。
+     */
+    static final int BUCKET_COUNT = 40;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong mTotalNs = new AtomicLong();
+
+    private final AtomicLong mMaxNs = new AtomicLong();
+
+    LatencyHistogram() {
+    }
+
+    /**
+     * 処理時間を記録する
+     */
+    void record(long ns) {
+        if (ns < 0) {
+            ns = 0;
+        }
+
+        long us = ns / 1000;
+        int index = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(us));
+        mBuckets.incrementAndGet(index);
+        mTotalNs.addAndGet(ns);
+
+        long max;
+        while (ns > (max = mMaxNs.get())) {
+            if (mMaxNs.compareAndSet(max, ns)) {
+                break;
+            }
+        }
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            mBuckets.set(i, 0);
+        }
+        mTotalNs.set(0);
+        mMaxNs.set(0);
+    }
+
+    /**
+     * 現在の分布を取得する
+     */
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            buckets[i] = mBuckets.get(i);
+        }
+        return new Snapshot(buckets, mTotalNs.get(), mMaxNs.get());
+    }
+
+    /**
+     * ある時点の分布
+     */
+    public static class Snapshot {
+        private final long[] mBuckets;
+
+        private final long mCount;
+
+        private final long mTotalNs;
+
+        private final long mMaxNs;
+
+        Snapshot(long[] buckets, long totalNs, long maxNs) {
+            long count = 0;
+            for (long bucket : buckets) {
+                count += bucket;
+            }
+            mBuckets = buckets;
+            mCount = count;
+            mTotalNs = totalNs;
+            mMaxNs = maxNs;
+        }
+
+        /**
+         * 記録された回数
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        public double getTotalMs() {
+            return toMs(mTotalNs);
+        }
+
+        public double getMeanMs() {
+            return mCount > 0 ? toMs(mTotalNs) / mCount : 0;
+        }
+
+        public double getMaxMs() {
+            return toMs(mMaxNs);
+        }
+
+        /**
+         * パーセンタイル値を取得する
+         *
+         * @param percentile 0-100
+         */
+        public double getPercentileMs(double percentile) {
+            if (mCount == 0) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(mCount * Math.max(0, Math.min(100, percentile)) / 100.0);
+            long sum = 0;
+            for (int i = 0; i < mBuckets.length; ++i) {
+                sum += mBuckets[i];
+                if (sum >= Math.max(1, rank)) {
+                    return Math.min(getMaxMs(), getUpperBoundMs(i));
+                }
+            }
+            return getMaxMs();
+        }
+
+        /**
+         * バケットごとの回数を取得する
+         */
+        public long[] getBucketCounts() {
+            return mBuckets.clone();
+        }
+
+        /**
+         * バケットの上限値を取得する
+         */
+        public static double getUpperBoundMs(int bucket) {
+            return (double) (1L << bucket) / 1000.0;
+        }
+
+        private static double toMs(long ns) {
+            return (double) ns / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
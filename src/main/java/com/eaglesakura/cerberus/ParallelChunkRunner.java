@@ -0,0 +1,129 @@
+package com.eaglesakura.cerberus;
+
+import com.eaglesakura.cerberus.error.TaskCanceledException;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * リストを可変長のチャンクに分割し、呼び出し元スレッドとプロセス共有スレッドで並列処理する。
+ * <p>
+ * チャンクサイズは残り要素数に応じて小さくなり、終盤の負荷の偏りを抑える。
+ * 呼び出し元スレッドも処理に参加するため、スレッドプールが埋まっていても処理は必ず進む。
+ */
+abstract class ParallelChunkRunner {
+
+    /**
+     * 1チャンクの最小要素数
+     */
+    static final int MIN_CHUNK_SIZE = 16;
+
+    @NonNull
+    final BackgroundTask<?> mTask;
+
+    final int mSize;
+
+    final int mWorkers;
+
+    private final AtomicInteger mCursor = new AtomicInteger();
+
+    private final Object mLock = new Object();
+
+    /**
+     * 処理中のヘルパースレッド数
+     */
+    private int mActiveHelpers;
+
+    /**
+     * 新たなヘルパーの参加を締め切っていればtrue
+     */
+    private boolean mClosed;
+
+    /**
+     * 最初に発生したエラー
+     */
+    private volatile Exception mError;
+
+    ParallelChunkRunner(@NonNull BackgroundTask<?> task, int size) {
+        mTask = task;
+        mSize = size;
+        mWorkers = Math.max(1, Math.min(ExecuteTargetSettings.getGlobalParallelsThreads() + 1, (size + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE));
+    }
+
+    /**
+     * [start, end)の範囲を処理する
+     */
+    abstract void onChunk(int start, int end) throws Exception;
+
+    /**
+     * 全てのチャンクを処理する
+     */
+    void execute(@NonNull Executor executor) throws Exception {
+        for (int i = 1; i < mWorkers; ++i) {
+            executor.execute(this::runHelper);
+        }
+
+        runChunks();
+
+        synchronized (mLock) {
+            mClosed = true;
+            while (mActiveHelpers > 0) {
+                mLock.wait();
+            }
+        }
+
+        if (mError != null) {
+            throw mError;
+        }
+        mTask.throwIfCanceled();
+    }
+
+    private void runHelper() {
+        synchronized (mLock) {
+            if (mClosed) {
+                // 呼び出し元が全て処理し終えている
+                return;
+            }
+            ++mActiveHelpers;
+        }
+
+        try {
+            runChunks();
+        } finally {
+            synchronized (mLock) {
+                --mActiveHelpers;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    private void runChunks() {
+        try {
+            while (mError == null) {
+                // チャンクの切れ目でキャンセルを確認する
+                if (mTask.isCanceled()) {
+                    throw new TaskCanceledException();
+                }
+
+                int start = mCursor.get();
+                int remaining = mSize - start;
+                if (remaining <= 0) {
+                    return;
+                }
+
+                int end = Math.min(mSize, start + Math.max(MIN_CHUNK_SIZE, remaining / (mWorkers * 2)));
+                if (mCursor.compareAndSet(start, end)) {
+                    onChunk(start, end);
+                }
+            }
+        } catch (Exception e) {
+            synchronized (mLock) {
+                if (mError == null) {
+                    mError = e;
+                }
+            }
+        }
+    }
+}
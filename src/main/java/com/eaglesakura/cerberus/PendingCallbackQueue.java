@@ -8,10 +8,16 @@ import android.arch.lifecycle.Lifecycle;
 import android.arch.lifecycle.LifecycleOwner;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -41,16 +47,85 @@ public class PendingCallbackQueue {
      */
     private List<StateController> mStateControllers = new ArrayList<>();
 
+    /**
+     * キャンセル可能な待機処理中のタスク
+     */
+    private final Set<BackgroundTask> mWaitingTasks = Collections.newSetFromMap(new ConcurrentHashMap<BackgroundTask, Boolean>());
+
     private ThreadControllerImpl mThreadController = new ThreadControllerImpl();
 
     private LifecycleStateFactory mStateFactory;
 
+    private Lifecycle mLifecycle;
+
+    /**
+     * bindしたLifecycleOwnerの名前
+     */
+    private String mOwnerName;
+
+    /**
+     * スケジューリングの重み
+     *
+     * 0の場合、ライフサイクルに応じて自動で決定される。
+     */
+    private volatile int mSchedulingWeight;
+
+    /**
+     * 遅延・定期実行待ちのタスク
+     *
+     * UIThreadからのみアクセスされる。
+     */
+    private final List<ScheduledTask> mScheduledTasks = new ArrayList<>();
+
     private static final AtomicInteger sInstanceId = new AtomicInteger();
 
+    /**
+     * プロセス内の全てのPendingCallbackQueue
+     */
+    private static final Map<PendingCallbackQueue, Boolean> sAllQueues = Collections.synchronizedMap(new WeakHashMap<PendingCallbackQueue, Boolean>());
+
     public PendingCallbackQueue() {
         for (CallbackTime callbackTime : CallbackTime.values()) {
-            mStateControllers.add(callbackTime.newStateController());
+            StateController controller = callbackTime.newStateController();
+            controller.mCallbackTime = callbackTime;
+            mStateControllers.add(controller);
         }
+        sAllQueues.put(this, Boolean.TRUE);
+    }
+
+    /**
+     * コールバックの保留・実行状況を取得する
+     */
+    @NonNull
+    public CallbackStats getCallbackStats(@NonNull CallbackTime callbackTime) {
+        return getController(callbackTime).getStats();
+    }
+
+    /**
+     * プロセス全体のコールバックの保留・実行状況を取得する
+     * <p>
+     * 保留中の値は現在生存している全てのPendingCallbackQueueの合計、それ以外はプロセス起動からの累計となる。
+     */
+    @NonNull
+    public static CallbackStats getGlobalCallbackStats(@NonNull CallbackTime callbackTime) {
+        List<PendingCallbackQueue> queues;
+        synchronized (sAllQueues) {
+            queues = new ArrayList<>(sAllQueues.keySet());
+        }
+
+        long now = SystemClock.uptimeMillis();
+        int pendingCount = 0;
+        long oldestPendingMs = 0;
+        for (PendingCallbackQueue queue : queues) {
+            StateController controller = queue.getController(callbackTime);
+            pendingCount += controller.getPendingCount();
+            oldestPendingMs = Math.max(oldestPendingMs, controller.getOldestPendingMs(now));
+        }
+
+        int index = callbackTime.ordinal();
+        return new CallbackStats(callbackTime, pendingCount, oldestPendingMs,
+                StateController.sDeliveredCounts.get(index), StateController.sCanceledCounts.get(index),
+                StateController.sFlushCounts.get(index), StateController.sFlushTotalNs.get(index), StateController.sFlushMaxNs.get(index));
     }
 
     /**
@@ -65,8 +140,69 @@ public class PendingCallbackQueue {
         return mThreadController;
     }
 
+    /**
+     * bindしたLifecycleOwnerの名前を取得する
+     */
+    String getOwnerName() {
+        return mOwnerName;
+    }
+
+    /**
+     * 現在のライフサイクルのステートを取得する
+     */
+    @NonNull
+    Lifecycle.State getLifecycleState() {
+        return mLifecycle.getCurrentState();
+    }
+
+    /**
+     * bindしたLifecycleOwnerが破棄済みであればtrue
+     */
+    boolean isDestroyed() {
+        return mLifecycle != null && mLifecycle.getCurrentState() == Lifecycle.State.DESTROYED;
+    }
+
+    /**
+     * スレッドプールで実行待ちとなったタスクの、スケジューリングの重みを指定する。
+     * <p>
+     * 0を指定した場合、ON_RESUME状態の間は {@link ExecuteTargetSettings#getForegroundWeight()} 、それ以外は1となる。
+     */
+    public PendingCallbackQueue schedulingWeight(int weight) {
+        mSchedulingWeight = Math.max(0, weight);
+        return this;
+    }
+
+    /**
+     * 現在のスケジューリングの重みを取得する
+     */
+    int getSchedulingWeight() {
+        if (mSchedulingWeight > 0) {
+            return mSchedulingWeight;
+        }
+
+        LifecycleStateFactory stateFactory = mStateFactory;
+        if (stateFactory != null && stateFactory.getCurrentState().isForeground()) {
+            return ExecuteTargetSettings.getForegroundWeight();
+        }
+        return 1;
+    }
+
+    /**
+     * 指定したExecuteTargetのスレッドを事前に生成しておく。
+     * <p>
+     * 画面の表示直後に大量のタスクを流す場合、事前に呼び出すことで最初のタスクでのスレッド生成を避けられる。
+     *
+     * @param threads 生成するスレッド数、最大スレッド数を超える分は無視される
+     */
+    public PendingCallbackQueue prestart(@NonNull ExecuteTarget target, int threads) {
+        mThreadController.prestart(target, threads);
+        return this;
+    }
+
     public PendingCallbackQueue bind(LifecycleOwner owner) {
         mStateFactory = LifecycleStateFactory.newInstance(owner);
+        mOwnerName = owner.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(owner));
+        mLifecycle = owner.getLifecycle();
         owner.getLifecycle().addObserver(new GenericLifecycleObserver() {
             @Override
             public void onStateChanged(LifecycleOwner source, Lifecycle.Event event) {
@@ -76,14 +212,112 @@ public class PendingCallbackQueue {
                 }
 
                 // 保留タスクがあれば流すように促す
-                for (StateController ctrl : mStateControllers) {
-                    ctrl.onNext(PendingCallbackQueue.this);
+                // 下りのイベントは登録と逆順に通知されるため、ON_DESTROYはステートに反映された後に破棄させる
+                if (event == Lifecycle.Event.ON_DESTROY) {
+                    sHandler.post(() -> flushPendingTasks());
+                } else {
+                    flushPendingTasks();
+                }
+
+                // 全てのObserverがステートを反映した後に、キャンセルされた待機処理を起こす
+                sHandler.post(() -> wakeWaitingTasks());
+
+                // 遅延・定期実行のスケジュールを停止・再開する
+                for (ScheduledTask task : new ArrayList<>(mScheduledTasks)) {
+                    task.onLifecycleChanged();
                 }
             }
         });
         return this;
     }
 
+    /**
+     * 保留されているタスクを、現在のステートに応じて実行・破棄する
+     */
+    private void flushPendingTasks() {
+        for (StateController ctrl : mStateControllers) {
+            ctrl.onNext(this);
+        }
+    }
+
+    /**
+     * 指定時間後にタスクを生成し、実行する。
+     * <p>
+     * ライフサイクルがminStateを下回っている間は待ち時間のカウントが止まらず、実行のみが再開まで保留される。
+     *
+     * @param delayMs  待ち時間
+     * @param minState スケジュールを動かす最低限のステート
+     * @param factory  タスクの生成処理
+     */
+    public ScheduledTask startDelayed(long delayMs, @NonNull Lifecycle.State minState, @NonNull ScheduledTask.TaskFactory factory) {
+        return startScheduledTask(new ScheduledTask(this, factory, 0, minState), delayMs);
+    }
+
+    /**
+     * {@link Lifecycle.State#STARTED} 以上の間に、指定時間後にタスクを生成し、実行する。
+     */
+    public ScheduledTask startDelayed(long delayMs, @NonNull ScheduledTask.TaskFactory factory) {
+        return startDelayed(delayMs, Lifecycle.State.STARTED, factory);
+    }
+
+    /**
+     * 一定間隔でタスクを生成し、実行する。
+     * <p>
+     * ライフサイクルがminStateを下回っている間はスケジュールが停止し、タスクは生成されない。
+     * 停止中に過ぎた実行時刻は、再開時に1回の実行にまとめられる。
+     *
+     * @param initialDelayMs 初回の待ち時間
+     * @param periodMs       実行間隔
+     * @param minState       スケジュールを動かす最低限のステート
+     * @param factory        タスクの生成処理
+     */
+    public ScheduledTask startPeriodic(long initialDelayMs, long periodMs, @NonNull Lifecycle.State minState, @NonNull ScheduledTask.TaskFactory factory) {
+        if (periodMs <= 0) {
+            throw new IllegalArgumentException("periodMs <= 0");
+        }
+        return startScheduledTask(new ScheduledTask(this, factory, periodMs, minState), initialDelayMs);
+    }
+
+    /**
+     * {@link Lifecycle.State#STARTED} 以上の間、一定間隔でタスクを生成し、実行する。
+     */
+    public ScheduledTask startPeriodic(long initialDelayMs, long periodMs, @NonNull ScheduledTask.TaskFactory factory) {
+        return startPeriodic(initialDelayMs, periodMs, Lifecycle.State.STARTED, factory);
+    }
+
+    private ScheduledTask startScheduledTask(ScheduledTask task, long delayMs) {
+        if (mLifecycle == null) {
+            throw new IllegalStateException("LifecycleOwner is not bound");
+        }
+
+        sHandler.post(() -> {
+            if (task.isCanceled()) {
+                return;
+            }
+            mScheduledTasks.add(task);
+            task.schedule(delayMs);
+        });
+        return task;
+    }
+
+    void removeScheduledTask(ScheduledTask task) {
+        mScheduledTasks.remove(task);
+    }
+
+    void onWaitStarted(BackgroundTask task) {
+        mWaitingTasks.add(task);
+    }
+
+    void onWaitFinished(BackgroundTask task) {
+        mWaitingTasks.remove(task);
+    }
+
+    private void wakeWaitingTasks() {
+        for (BackgroundTask task : mWaitingTasks) {
+            task.wakeIfCanceled();
+        }
+    }
+
     PendingCallbackQueue add(CallbackTime time, Disposable s) {
         if (time != CallbackTime.FireAndForget) {
             mSubscription.add(s);
@@ -117,6 +351,18 @@ public class PendingCallbackQueue {
         getController(target).run(this, new PendingTask(callback, mStateFactory.getCurrentState()));
     }
 
+    /**
+     * タスクのコールバックを渡し、処理を行わせる。
+     * <p>
+     * ライフサイクルによって実行されずに破棄された場合、droppedが呼び出される。
+     *
+     * @param source コールバックを発行したタスク
+     * @return ライフサイクル待ちで保留された場合true
+     */
+    boolean run(CallbackTime target, BackgroundTask<?> source, Runnable callback, Runnable dropped) {
+        return getController(target).run(this, new PendingTask(callback, mStateFactory.getCurrentState(), source, dropped));
+    }
+
     /**
      * 実行クラスを渡し、実行待ちを行う。
      *
@@ -185,15 +431,47 @@ public class PendingCallbackQueue {
          */
         final LifecycleStateDump mDumpState;
 
+        /**
+         * 保留された時刻(SystemClock.uptimeMillis)
+         */
+        long mPendingTime;
+
+        /**
+         * コールバックを発行したタスク
+         *
+         * タスク以外から発行された場合はnull
+         */
+        final BackgroundTask<?> mSource;
+
+        /**
+         * 実行されずに破棄された場合の処理
+         */
+        final Runnable mDropAction;
+
         public PendingTask(Runnable action, LifecycleStateDump dumpState) {
+            this(action, dumpState, null, null);
+        }
+
+        PendingTask(Runnable action, LifecycleStateDump dumpState, BackgroundTask<?> source, Runnable dropAction) {
             mAction = action;
             mDumpState = dumpState;
+            mSource = source;
+            mDropAction = dropAction;
         }
 
         public void run() {
             mAction.run();
         }
 
+        /**
+         * 実行されずに破棄された
+         */
+        void drop() {
+            if (mDropAction != null) {
+                mDropAction.run();
+            }
+        }
+
         public LifecycleStateDump getDumpState() {
             return mDumpState;
         }
@@ -0,0 +1,35 @@
+package com.eaglesakura.cerberus;
+
+import com.eaglesakura.cerberus.error.TaskRejectedException;
+
+/**
+ * 実行待ちキューが上限に達した場合の挙動
+ *
+ * 受け付けられなかったタスクは {@link TaskRejectedException} でfailedへ通知される。
+ */
+public enum QueuePolicy {
+    /**
+     * 新しいタスクを受け付けない
+     */
+    Reject,
+
+    /**
+     * 最も古い実行待ちのタスクを破棄し、新しいタスクを受け付ける
+     */
+    ShedOldest,
+
+    /**
+     * 最も優先度の低い実行待ちのタスクを破棄し、新しいタスクを受け付ける
+     *
+     * 優先度が同じ場合は古いタスクを破棄する。新しいタスクの優先度が実行待ちの全てのタスクより低い場合は、新しいタスクを受け付けない。
+     */
+    ShedLowestPriority,
+
+    /**
+     * キューに空きができるまで、start()を呼び出したスレッドをブロックする
+     *
+     * 開始済みでまだキューに積まれていないタスクも上限に数えられる。
+     * UIThreadはブロックできないため、UIThreadからのstart()ではタスクを空き待ちとして保留し、空いた順に投入する。
+     */
+    Block,
+}
@@ -0,0 +1,133 @@
+package com.eaglesakura.cerberus;
+
+import com.eaglesakura.cerberus.error.TaskCanceledException;
+
+import android.support.annotation.NonNull;
+
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+/**
+ * タスク失敗時の再試行条件
+ *
+ * 再試行までの待ち時間は指数関数的に増加し、ジッタによってばらつかせる。
+ * 待ち時間の間はスレッドを占有しない。
+ */
+public class RetryPolicy {
+
+    private static final Random sRandom = new Random();
+
+    /**
+     * 最大試行回数(初回を含む)
+     */
+    int mMaxAttempts = 3;
+
+    /**
+     * 初回の再試行までの待ち時間
+     */
+    long mInitialDelayMs = 100;
+
+    /**
+     * 再試行ごとの待ち時間の倍率
+     */
+    double mMultiplier = 2.0;
+
+    /**
+     * 待ち時間の上限
+     */
+    long mMaxDelayMs = 1000 * 30;
+
+    /**
+     * 待ち時間のばらつき(0.0 - 1.0)
+     */
+    double mJitter = 0.5;
+
+    /**
+     * 再試行対象のエラーであればtrueを返す
+     */
+    Condition mCondition = error -> true;
+
+    /**
+     * 最大試行回数(初回を含む)を指定する
+     */
+    public RetryPolicy maxAttempts(int maxAttempts) {
+        mMaxAttempts = Math.max(1, maxAttempts);
+        return this;
+    }
+
+    /**
+     * 待ち時間を指定する
+     *
+     * @param initialDelayMs 初回の再試行までの待ち時間
+     * @param multiplier     再試行ごとの待ち時間の倍率
+     * @param maxDelayMs     待ち時間の上限
+     */
+    public RetryPolicy backoff(long initialDelayMs, double multiplier, long maxDelayMs) {
+        mInitialDelayMs = Math.max(0, initialDelayMs);
+        mMultiplier = Math.max(1.0, multiplier);
+        mMaxDelayMs = Math.max(mInitialDelayMs, maxDelayMs);
+        return this;
+    }
+
+    /**
+     * 待ち時間のばらつきを指定する
+     *
+     * 0.5の場合、待ち時間は50%-100%の範囲でランダムに短縮される。
+     */
+    public RetryPolicy jitter(double jitter) {
+        mJitter = Math.max(0.0, Math.min(1.0, jitter));
+        return this;
+    }
+
+    /**
+     * 再試行対象のエラーを指定する
+     */
+    public RetryPolicy retryIf(@NonNull Condition condition) {
+        mCondition = condition;
+        return this;
+    }
+
+    /**
+     * 再試行を行う場合はtrue
+     *
+     * キャンセルによるエラーは再試行しない。
+     *
+     * @param attempt 次の試行回数
+     */
+    boolean isRetryable(int attempt, Exception error) {
+        if (attempt > mMaxAttempts) {
+            return false;
+        }
+
+        if ((error instanceof TaskCanceledException)
+                || (error instanceof InterruptedException)
+                || (error instanceof InterruptedIOException)) {
+            return false;
+        }
+
+        return mCondition.is(error);
+    }
+
+    /**
+     * 再試行までの待ち時間を取得する
+     *
+     * @param retry 再試行の回数(1から始まる)
+     */
+    long getDelayMs(int retry) {
+        double delay = mInitialDelayMs * Math.pow(mMultiplier, retry - 1);
+        delay = Math.min(mMaxDelayMs, delay);
+
+        double random;
+        synchronized (sRandom) {
+            random = sRandom.nextDouble();
+        }
+        return (long) (delay * (1.0 - mJitter * random));
+    }
+
+    /**
+     * 再試行の判定を行う
+     */
+    public interface Condition {
+        boolean is(Exception error);
+    }
+}
@@ -0,0 +1,155 @@
+package com.eaglesakura.cerberus;
+
+import android.arch.lifecycle.Lifecycle;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+/**
+ * 遅延実行・定期実行されるタスク
+ *
+ * {@link PendingCallbackQueue#startDelayed(long, Lifecycle.State, TaskFactory)} /
+ * {@link PendingCallbackQueue#startPeriodic(long, long, Lifecycle.State, TaskFactory)} から生成される。
+ *
+ * ライフサイクルが指定ステートを下回っている間はスケジュール自体が停止し、タスクは生成されない。
+ * 停止中に実行時刻を迎えた場合、再開時に1回だけまとめて実行される。
+ * 前回のタスクが完了していない場合、その回の実行はスキップされる。
+ */
+public class ScheduledTask {
+
+    @NonNull
+    final PendingCallbackQueue mController;
+
+    @NonNull
+    final TaskFactory mFactory;
+
+    /**
+     * 実行間隔
+     * <p>
+     * 0以下の場合は1回だけ実行する
+     */
+    final long mPeriodMs;
+
+    /**
+     * スケジュールを動かす最低限のステート
+     */
+    @NonNull
+    final Lifecycle.State mMinState;
+
+    /**
+     * 次回の実行時刻
+     */
+    private long mNextRunTime;
+
+    /**
+     * ライフサイクルによって停止中であればtrue
+     */
+    private boolean mSuspended;
+
+    private volatile boolean mCanceled;
+
+    /**
+     * 最後に生成したタスク
+     */
+    private BackgroundTask mLastTask;
+
+    private final Runnable mTick = this::onTick;
+
+    ScheduledTask(@NonNull PendingCallbackQueue controller, @NonNull TaskFactory factory, long periodMs, @NonNull Lifecycle.State minState) {
+        mController = controller;
+        mFactory = factory;
+        mPeriodMs = periodMs;
+        mMinState = minState;
+    }
+
+    /**
+     * スケジュールを開始する
+     *
+     * UIThreadから呼び出される。
+     */
+    void schedule(long delayMs) {
+        mNextRunTime = SystemClock.uptimeMillis() + Math.max(0, delayMs);
+        onLifecycleChanged();
+    }
+
+    /**
+     * スケジュールを取り消す
+     *
+     * 実行中のタスクはキャンセルされない。
+     */
+    public void cancel() {
+        mCanceled = true;
+        PendingCallbackQueue.sHandler.post(() -> {
+            PendingCallbackQueue.sHandler.removeCallbacks(mTick);
+            mController.removeScheduledTask(this);
+        });
+    }
+
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /**
+     * ライフサイクルに合わせてスケジュールを停止・再開する
+     *
+     * UIThreadから呼び出される。
+     */
+    void onLifecycleChanged() {
+        if (mCanceled) {
+            return;
+        }
+
+        Lifecycle.State state = mController.getLifecycleState();
+        if (state == Lifecycle.State.DESTROYED) {
+            cancel();
+        } else if (!state.isAtLeast(mMinState)) {
+            // スケジュールを止める
+            if (!mSuspended) {
+                mSuspended = true;
+                PendingCallbackQueue.sHandler.removeCallbacks(mTick);
+            }
+        } else {
+            // スケジュールを再開する。停止中に実行時刻を過ぎていれば、即座に実行される
+            mSuspended = false;
+            PendingCallbackQueue.sHandler.removeCallbacks(mTick);
+            PendingCallbackQueue.sHandler.postAtTime(mTick, mNextRunTime);
+        }
+    }
+
+    private void onTick() {
+        if (mCanceled || mSuspended) {
+            return;
+        }
+
+        if (mLastTask == null || mLastTask.isFinished()) {
+            BackgroundTaskBuilder builder = mFactory.newTask(mController);
+            if (builder != null) {
+                mLastTask = builder.start();
+            }
+        }
+
+        if (mPeriodMs <= 0) {
+            mCanceled = true;
+            mController.removeScheduledTask(this);
+            return;
+        }
+
+        // 過ぎてしまった実行時刻はまとめる
+        long now = SystemClock.uptimeMillis();
+        do {
+            mNextRunTime += mPeriodMs;
+        } while (mNextRunTime <= now);
+        PendingCallbackQueue.sHandler.postAtTime(mTick, mNextRunTime);
+    }
+
+    /**
+     * 実行のたびにタスクを生成する
+     */
+    public interface TaskFactory {
+        /**
+         * 実行するタスクを生成する。start()は呼び出し元で行われる。
+         *
+         * @return 生成したタスク。nullの場合は何もしない
+         */
+        BackgroundTaskBuilder newTask(@NonNull PendingCallbackQueue controller);
+    }
+}
@@ -0,0 +1,315 @@
+package com.eaglesakura.cerberus;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UIThreadで実行されるコールバックの処理時間を監視する
+ *
+ * {@link PendingCallbackQueue} から実行される全てのコールバックの処理時間を計測し、予算を超えたものを通知する。
+ * タスク以外から発行されたコールバックは、生成元不明として集計される。
+ * タスクの生成元は {@link BackgroundTaskBuilder} の生成時にスタックトレースとして記録されるが、
+ * コストが高いため指定した割合のタスクのみ記録される。
+ * 生成元ごとに処理時間が集計され、重いコールバックを持つ画面を特定できる。
+ */
+public class SlowCallbackMonitor {
+
+    /**
+     * 生成元が記録されていないタスク
+     */
+    public static final String UNKNOWN_ORIGIN = "unknown";
+
+    private static volatile SlowCallbackMonitor sInstance;
+
+    private final long mBudgetNs;
+
+    /**
+     * 生成元を記録する間隔
+     */
+    private final int mSampleInterval;
+
+    private final Listener mListener;
+
+    private final AtomicLong mBuilderCount = new AtomicLong();
+
+    /**
+     * 生成元ごとの集計
+     */
+    private final Map<String, OriginStats> mOriginStats = new HashMap<>();
+
+    private SlowCallbackMonitor(long budgetMs, int sampleInterval, Listener listener) {
+        mBudgetNs = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        mSampleInterval = Math.max(1, sampleInterval);
+        mListener = listener;
+    }
+
+    /**
+     * 監視を開始する
+     *
+     * @param budgetMs       コールバック1回あたりの処理時間の予算
+     * @param sampleInterval 生成元を記録する間隔、1であれば全てのタスク、10であれば10タスクに1つを記録する
+     * @param listener       予算を超えた場合の通知先
+     */
+    public static void enable(long budgetMs, int sampleInterval, @NonNull Listener listener) {
+        sInstance = new SlowCallbackMonitor(budgetMs, sampleInterval, listener);
+    }
+
+    /**
+     * 監視を終了し、集計を破棄する
+     */
+    public static void disable() {
+        sInstance = null;
+    }
+
+    public static boolean isEnabled() {
+        return sInstance != null;
+    }
+
+    /**
+     * 生成元ごとの集計を取得する
+     *
+     * 合計処理時間の長い順に並べられる。
+     */
+    @NonNull
+    public static List<OriginStats> getOriginStats() {
+        SlowCallbackMonitor monitor = sInstance;
+        List<OriginStats> result = new ArrayList<>();
+        if (monitor == null) {
+            return result;
+        }
+
+        synchronized (monitor.mOriginStats) {
+            for (OriginStats stats : monitor.mOriginStats.values()) {
+                result.add(stats.copy());
+            }
+        }
+        Collections.sort(result, (a, b) -> Long.compare(b.mTotalNs, a.mTotalNs));
+        return result;
+    }
+
+    /**
+     * タスクの生成元を記録する
+     *
+     * @return 記録対象外であればnull
+     */
+    @Nullable
+    static Throwable captureOrigin() {
+        SlowCallbackMonitor monitor = sInstance;
+        if (monitor == null) {
+            return null;
+        }
+
+        if (monitor.mBuilderCount.getAndIncrement() % monitor.mSampleInterval != 0) {
+            return null;
+        }
+        return new Throwable("Task origin");
+    }
+
+    /**
+     * 計測を開始する
+     *
+     * @return 監視中でなければ0
+     */
+    static long begin() {
+        return sInstance != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * コールバックの実行が終わった
+     *
+     * @param source    コールバックを発行したタスク、タスク以外から発行された場合はnull
+     * @param startTime {@link #begin()} の戻り値
+     */
+    static void end(@Nullable BackgroundTask<?> source, CallbackTime callbackTime, long startTime) {
+        SlowCallbackMonitor monitor = sInstance;
+        if (monitor == null || startTime == 0) {
+            return;
+        }
+        monitor.onCallbackFinished(source != null ? source.mOrigin : null, callbackTime, System.nanoTime() - startTime);
+    }
+
+    private void onCallbackFinished(Throwable originTrace, CallbackTime callbackTime, long durationNs) {
+        String origin = getOriginName(originTrace);
+        boolean slow = durationNs > mBudgetNs;
+
+        synchronized (mOriginStats) {
+            OriginStats stats = mOriginStats.get(origin);
+            if (stats == null) {
+                stats = new OriginStats(origin);
+                mOriginStats.put(origin, stats);
+            }
+            stats.add(durationNs, slow);
+        }
+
+        if (slow) {
+            mListener.onSlowCallback(new SlowCallback(callbackTime, durationNs, mBudgetNs, origin, originTrace));
+        }
+    }
+
+    /**
+     * スタックトレースから、ライブラリ外の最初の呼び出し元を取得する
+     */
+    static String getOriginName(Throwable origin) {
+        if (origin == null) {
+            return UNKNOWN_ORIGIN;
+        }
+
+        String libraryPackage = SlowCallbackMonitor.class.getPackage().getName() + ".";
+        for (StackTraceElement element : origin.getStackTrace()) {
+            if (!element.getClassName().startsWith(libraryPackage)) {
+                return element.toString();
+            }
+        }
+        return UNKNOWN_ORIGIN;
+    }
+
+    /**
+     * 予算を超えたコールバック
+     */
+    public static class SlowCallback {
+        private final CallbackTime mCallbackTime;
+
+        private final long mDurationNs;
+
+        private final long mBudgetNs;
+
+        private final String mOriginName;
+
+        private final Throwable mOrigin;
+
+        SlowCallback(CallbackTime callbackTime, long durationNs, long budgetNs, String originName, Throwable origin) {
+            mCallbackTime = callbackTime;
+            mDurationNs = durationNs;
+            mBudgetNs = budgetNs;
+            mOriginName = originName;
+            mOrigin = origin;
+        }
+
+        public CallbackTime getCallbackTime() {
+            return mCallbackTime;
+        }
+
+        public double getDurationMs() {
+            return (double) mDurationNs / 1000000.0;
+        }
+
+        public double getBudgetMs() {
+            return (double) mBudgetNs / 1000000.0;
+        }
+
+        /**
+         * タスクを生成した呼び出し元
+         *
+         * 記録されていない場合は {@link #UNKNOWN_ORIGIN}
+         */
+        @NonNull
+        public String getOriginName() {
+            return mOriginName;
+        }
+
+        /**
+         * タスクを生成した時点のスタックトレース
+         *
+         * 記録されていない場合はnull
+         */
+        @Nullable
+        public Throwable getOrigin() {
+            return mOrigin;
+        }
+
+        @Override
+        public String toString() {
+            return "SlowCallback{" + getDurationMs() + "ms > " + getBudgetMs() + "ms, " + mCallbackTime + ", " + mOriginName + "}";
+        }
+    }
+
+    /**
+     * 生成元ごとの集計
+     */
+    public static class OriginStats {
+        final String mOrigin;
+
+        long mCount;
+
+        long mSlowCount;
+
+        long mTotalNs;
+
+        long mMaxNs;
+
+        OriginStats(String origin) {
+            mOrigin = origin;
+        }
+
+        void add(long durationNs, boolean slow) {
+            ++mCount;
+            if (slow) {
+                ++mSlowCount;
+            }
+            mTotalNs += durationNs;
+            mMaxNs = Math.max(mMaxNs, durationNs);
+        }
+
+        OriginStats copy() {
+            OriginStats result = new OriginStats(mOrigin);
+            result.mCount = mCount;
+            result.mSlowCount = mSlowCount;
+            result.mTotalNs = mTotalNs;
+            result.mMaxNs = mMaxNs;
+            return result;
+        }
+
+        @NonNull
+        public String getOrigin() {
+            return mOrigin;
+        }
+
+        /**
+         * 実行されたコールバック数
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * 予算を超えたコールバック数
+         */
+        public long getSlowCount() {
+            return mSlowCount;
+        }
+
+        public double getTotalMs() {
+            return (double) mTotalNs / 1000000.0;
+        }
+
+        public double getMeanMs() {
+            return mCount > 0 ? getTotalMs() / mCount : 0;
+        }
+
+        public double getMaxMs() {
+            return (double) mMaxNs / 1000000.0;
+        }
+
+        @Override
+        public String toString() {
+            return "OriginStats{" + mOrigin + " count=" + mCount + " slow=" + mSlowCount + " total=" + getTotalMs() + "ms max=" + getMaxMs() + "ms}";
+        }
+    }
+
+    /**
+     * 予算を超えたコールバックの通知先
+     *
+     * UIThreadから呼び出される。
+     */
+    public interface Listener {
+        void onSlowCallback(@NonNull SlowCallback callback);
+    }
+}
@@ -1,7 +1,11 @@
 package com.eaglesakura.cerberus;
 
+import android.os.SystemClock;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * ステート管理
@@ -10,6 +14,40 @@ abstract class StateController {
 
     List<PendingCallbackQueue.PendingTask> mPendingActions = new ArrayList<>();
 
+    /**
+     * 担当するCallbackTime
+     */
+    CallbackTime mCallbackTime;
+
+    /**
+     * 実行したコールバック数
+     */
+    private final AtomicLong mDeliveredCount = new AtomicLong();
+
+    /**
+     * 破棄したコールバック数
+     */
+    private final AtomicLong mCanceledCount = new AtomicLong();
+
+    private long mFlushCount;
+
+    private long mFlushTotalNs;
+
+    private long mFlushMaxNs;
+
+    /**
+     * プロセス全体の、CallbackTimeごとの集計
+     */
+    static final AtomicLongArray sDeliveredCounts = new AtomicLongArray(CallbackTime.values().length);
+
+    static final AtomicLongArray sCanceledCounts = new AtomicLongArray(CallbackTime.values().length);
+
+    static final AtomicLongArray sFlushCounts = new AtomicLongArray(CallbackTime.values().length);
+
+    static final AtomicLongArray sFlushTotalNs = new AtomicLongArray(CallbackTime.values().length);
+
+    static final AtomicLongArray sFlushMaxNs = new AtomicLongArray(CallbackTime.values().length);
+
     StateController() {
     }
 
@@ -35,14 +73,22 @@ abstract class StateController {
 
             List<PendingCallbackQueue.PendingTask> executes = new ArrayList<>(mPendingActions);
 
+            final long START_TIME = System.nanoTime();
+            boolean flushed = false;
             for (PendingCallbackQueue.PendingTask task : executes) {
                 if (isCanceled(current, task.getDumpState())) {
                     mPendingActions.remove(task);
+                    onCanceled(task);
                 } else if (!isPending(current, task.getDumpState())) {
-                    task.run();
+                    deliver(task);
                     mPendingActions.remove(task);
+                    flushed = true;
                 }
             }
+
+            if (flushed) {
+                onFlushed(System.nanoTime() - START_TIME);
+            }
         }
     }
 
@@ -51,21 +97,93 @@ abstract class StateController {
      *
      * @param current 現在のステート
      * @param task    実行対象のタスク
+     * @return ライフサイクル待ちで保留された場合true
      */
-    void run(PendingCallbackQueue current, PendingCallbackQueue.PendingTask task) {
+    boolean run(PendingCallbackQueue current, PendingCallbackQueue.PendingTask task) {
         synchronized (mPendingActions) {
             if (isCanceled(current, task.getDumpState())) {
-                return;
+                onCanceled(task);
+                return false;
             } else if (isPending(current, task.getDumpState())) {
+                task.mPendingTime = SystemClock.uptimeMillis();
                 mPendingActions.add(task);
-                return;
+                return true;
             }
 
             if (Thread.currentThread().equals(PendingCallbackQueue.sHandler.getLooper().getThread())) {
-                task.run();
+                deliver(task);
             } else {
-                PendingCallbackQueue.sHandler.post(() -> task.run());
+                PendingCallbackQueue.sHandler.post(() -> deliver(task));
+            }
+            return false;
+        }
+    }
+
+    private void deliver(PendingCallbackQueue.PendingTask task) {
+        mDeliveredCount.incrementAndGet();
+        sDeliveredCounts.incrementAndGet(mCallbackTime.ordinal());
+        final long START_TIME = SlowCallbackMonitor.begin();
+        try {
+            task.run();
+        } finally {
+            SlowCallbackMonitor.end(task.mSource, mCallbackTime, START_TIME);
+        }
+    }
+
+    private void onCanceled(PendingCallbackQueue.PendingTask task) {
+        mCanceledCount.incrementAndGet();
+        sCanceledCounts.incrementAndGet(mCallbackTime.ordinal());
+        task.drop();
+    }
+
+    /**
+     * 保留されていたコールバックをまとめて実行した
+     */
+    private void onFlushed(long durationNs) {
+        ++mFlushCount;
+        mFlushTotalNs += durationNs;
+        mFlushMaxNs = Math.max(mFlushMaxNs, durationNs);
+
+        int index = mCallbackTime.ordinal();
+        sFlushCounts.incrementAndGet(index);
+        sFlushTotalNs.addAndGet(index, durationNs);
+        long max;
+        while (durationNs > (max = sFlushMaxNs.get(index))) {
+            if (sFlushMaxNs.compareAndSet(index, max, durationNs)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 保留中のコールバック数
+     */
+    int getPendingCount() {
+        synchronized (mPendingActions) {
+            return mPendingActions.size();
+        }
+    }
+
+    /**
+     * 最も長く保留されているコールバックの待ち時間
+     */
+    long getOldestPendingMs(long now) {
+        synchronized (mPendingActions) {
+            long oldest = 0;
+            for (PendingCallbackQueue.PendingTask task : mPendingActions) {
+                oldest = Math.max(oldest, now - task.mPendingTime);
             }
+            return oldest;
+        }
+    }
+
+    /**
+     * 現在の集計結果を取得する
+     */
+    CallbackStats getStats() {
+        synchronized (mPendingActions) {
+            return new CallbackStats(mCallbackTime, mPendingActions.size(), getOldestPendingMs(SystemClock.uptimeMillis()),
+                    mDeliveredCount.get(), mCanceledCount.get(), mFlushCount, mFlushTotalNs, mFlushMaxNs);
         }
     }
 
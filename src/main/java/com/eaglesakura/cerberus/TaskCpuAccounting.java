@@ -0,0 +1,210 @@
+package com.eaglesakura.cerberus;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 非同期処理のCPU時間と経過時間をタグごとに集計する
+ *
+ * タグは {@link BackgroundTaskBuilder#tag(String)} で指定する。
+ * 集計はタグとExecuteTargetの組み合わせごとに行われ、CPU時間の割合からI/O待ちが主体の処理かを判断できる。
+ * 例えば {@link ExecuteTarget#Network} でCPU時間の割合が高いタスクは、計算処理用のExecuteTargetへ移すべきである。
+ */
+public class TaskCpuAccounting {
+
+    /**
+     * タグが指定されていないタスク
+     */
+    public static final String UNTAGGED = "(untagged)";
+
+    private static volatile boolean sEnabled;
+
+    /**
+     * タグ・ExecuteTargetごとの集計
+     */
+    private static final Map<String, TagStats> sStats = new HashMap<>();
+
+    private TaskCpuAccounting() {
+    }
+
+    /**
+     * 記録を開始する
+     *
+     * @return CPU時間を取得できない環境であればfalse、その場合も経過時間は記録される
+     */
+    public static boolean enable() {
+        sEnabled = true;
+        return ThreadCpuClock.isSupported();
+    }
+
+    /**
+     * 記録を終了する
+     */
+    public static void disable() {
+        sEnabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * 集計を破棄する
+     */
+    public static void reset() {
+        synchronized (sStats) {
+            sStats.clear();
+        }
+    }
+
+    /**
+     * タグ・ExecuteTargetごとの集計を取得する
+     *
+     * CPU時間の長い順に並べられる。
+     */
+    @NonNull
+    public static List<TagStats> getStats() {
+        List<TagStats> result = new ArrayList<>();
+        synchronized (sStats) {
+            for (TagStats stats : sStats.values()) {
+                result.add(stats.copy());
+            }
+        }
+        Collections.sort(result, (a, b) -> Long.compare(b.mCpuTimeNs, a.mCpuTimeNs));
+        return result;
+    }
+
+    /**
+     * 非同期処理が開始された
+     *
+     * 実行スレッドから呼び出される。
+     */
+    static void onTaskRunning(BackgroundTask<?> task) {
+        task.mCpuTimeNs = -1;
+        task.mCpuStartNs = sEnabled ? ThreadCpuClock.currentThreadCpuTimeNs() : -1;
+    }
+
+    /**
+     * 非同期処理が終了した
+     *
+     * 実行スレッドから呼び出される。
+     *
+     * @param wallTimeNs 非同期処理の経過時間
+     */
+    static void onTaskFinished(BackgroundTask<?> task, ExecuteTarget target, long wallTimeNs) {
+        if (!sEnabled) {
+            return;
+        }
+
+        long cpuTimeNs = -1;
+        if (task.mCpuStartNs >= 0) {
+            long now = ThreadCpuClock.currentThreadCpuTimeNs();
+            if (now >= 0) {
+                cpuTimeNs = now - task.mCpuStartNs;
+            }
+        }
+        task.mCpuTimeNs = cpuTimeNs;
+
+        String tag = (task.mTag != null) ? task.mTag : UNTAGGED;
+        String key = tag + "/" + target.name();
+        synchronized (sStats) {
+            TagStats stats = sStats.get(key);
+            if (stats == null) {
+                stats = new TagStats(tag, target);
+                sStats.put(key, stats);
+            }
+            stats.add(cpuTimeNs, wallTimeNs);
+        }
+    }
+
+    /**
+     * タグ・ExecuteTargetごとの集計
+     */
+    public static class TagStats {
+        final String mTag;
+
+        final ExecuteTarget mTarget;
+
+        long mCount;
+
+        long mCpuTimeNs;
+
+        long mWallTimeNs;
+
+        /**
+         * CPU時間を取得できたタスクの経過時間
+         */
+        long mMeasuredWallTimeNs;
+
+        TagStats(String tag, ExecuteTarget target) {
+            mTag = tag;
+            mTarget = target;
+        }
+
+        /**
+         * @param cpuTimeNs CPU時間、取得できなかった場合は負の値
+         */
+        void add(long cpuTimeNs, long wallTimeNs) {
+            ++mCount;
+            mWallTimeNs += wallTimeNs;
+            if (cpuTimeNs >= 0) {
+                mCpuTimeNs += cpuTimeNs;
+                mMeasuredWallTimeNs += wallTimeNs;
+            }
+        }
+
+        TagStats copy() {
+            TagStats result = new TagStats(mTag, mTarget);
+            result.mCount = mCount;
+            result.mCpuTimeNs = mCpuTimeNs;
+            result.mWallTimeNs = mWallTimeNs;
+            result.mMeasuredWallTimeNs = mMeasuredWallTimeNs;
+            return result;
+        }
+
+        @NonNull
+        public String getTag() {
+            return mTag;
+        }
+
+        @NonNull
+        public ExecuteTarget getTarget() {
+            return mTarget;
+        }
+
+        /**
+         * 実行されたタスク数
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        public double getCpuTimeMs() {
+            return (double) mCpuTimeNs / 1000000.0;
+        }
+
+        public double getWallTimeMs() {
+            return (double) mWallTimeNs / 1000000.0;
+        }
+
+        /**
+         * 経過時間に占めるCPU時間の割合(0-1)
+         *
+         * 1に近いほど計算処理、0に近いほどI/O待ちが主体となる。
+         * CPU時間を取得できなかったタスクは計算に含まれない。
+         */
+        public double getCpuRatio() {
+            return mMeasuredWallTimeNs > 0 ? Math.min(1.0, (double) mCpuTimeNs / mMeasuredWallTimeNs) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "TagStats{" + mTag + "/" + mTarget + " count=" + mCount + " cpu=" + getCpuTimeMs() + "ms wall=" + getWallTimeMs() + "ms}";
+        }
+    }
+}
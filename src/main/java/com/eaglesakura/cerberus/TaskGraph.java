@@ -0,0 +1,552 @@
+package com.eaglesakura.cerberus;
+
+import com.eaglesakura.cerberus.error.TaskCanceledException;
+import com.eaglesakura.cerberus.lambda.CancelCallback;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 依存関係を持つタスク群を実行する
+ *
+ * 各ノードは依存先が全て完了した時点で、指定された {@link ExecuteTarget} で実行開始される。
+ * ノードが失敗・キャンセルされた場合、そのノードに依存するノードのみが実行されずにキャンセル扱いとなる。
+ * 全体の実行結果はUIThreadで {@link CallbackTime} に従ってハンドリングされる。
+ */
+public class TaskGraph {
+    final PendingCallbackQueue mController;
+
+    /**
+     * 登録順を保ったノード一覧
+     */
+    final Map<String, Node<?>> mNodes = new LinkedHashMap<>();
+
+    /**
+     * コールバック対象のタイミング
+     */
+    private CallbackTime mCallbackTime = CallbackTime.FireAndForget;
+
+    private Action0 mCompletedCallback;
+
+    private ErrorAction mErrorCallback;
+
+    private Action0 mCancelCallback;
+
+    /**
+     * 外部から指定されたキャンセルチェック
+     */
+    private List<CancelCallback> mCancelSignals = new ArrayList<>();
+
+    /**
+     * 実行開始時のステート
+     */
+    private LifecycleStateDump mDumpState;
+
+    private boolean mStarted;
+
+    private boolean mFinished;
+
+    /**
+     * 未完了のノード数
+     */
+    private int mRemainingNodes;
+
+    private long mStartTime;
+
+    private long mFinishTime;
+
+    public TaskGraph(PendingCallbackQueue controller) {
+        mController = controller;
+    }
+
+    /**
+     * ノードを追加する
+     *
+     * @param name         ノード名
+     * @param target       実行対象のスレッド
+     * @param async        処理内容
+     * @param predecessors 依存するノード名
+     */
+    public <T> TaskGraph node(@NonNull String name, @NonNull ExecuteTarget target, @NonNull Async<T> async, String... predecessors) {
+        if (mStarted) {
+            throw new IllegalStateException("Graph is started!");
+        }
+        if (mNodes.containsKey(name)) {
+            throw new IllegalArgumentException("Node already exists : " + name);
+        }
+
+        Node<T> node = new Node<>(name, target, async);
+        Collections.addAll(node.mPredecessors, predecessors);
+        mNodes.put(name, node);
+        return this;
+    }
+
+    /**
+     * ノードを追加する
+     */
+    public <T> TaskGraph node(@NonNull String name, @NonNull ExecuteTarget target, @NonNull BackgroundTask.Async<T> async, String... predecessors) {
+        return node(name, target, (Async<T>) (graph, task) -> async.call(task), predecessors);
+    }
+
+    /**
+     * コールバック対象のタイミングを指定する
+     */
+    public TaskGraph callbackOn(CallbackTime target) {
+        mCallbackTime = target;
+        return this;
+    }
+
+    /**
+     * ユーザのキャンセルチェックを有効化する
+     */
+    public TaskGraph cancelSignal(CancelCallback signal) {
+        mCancelSignals.add(signal);
+        return this;
+    }
+
+    /**
+     * 全てのノードが完了した時の処理を記述する
+     */
+    public TaskGraph completed(Action0 callback) {
+        mCompletedCallback = callback;
+        return this;
+    }
+
+    /**
+     * いずれかのノードが失敗した時の処理を記述する
+     *
+     * 失敗したノードに依存しないノードは全て実行されてからコールバックされる。
+     */
+    public TaskGraph failed(ErrorAction callback) {
+        mErrorCallback = callback;
+        return this;
+    }
+
+    /**
+     * キャンセル時の処理を記述する
+     */
+    public TaskGraph canceled(Action0 callback) {
+        mCancelCallback = callback;
+        return this;
+    }
+
+    /**
+     * 依存関係を検証し、処理を開始する
+     */
+    public TaskGraph start() {
+        if (mStarted) {
+            throw new IllegalStateException("Graph is started!");
+        }
+        validate();
+        mStarted = true;
+
+        PendingCallbackQueue.sHandler.post(() -> {
+            mDumpState = mController.getCurrentState();
+            mStartTime = SystemClock.elapsedRealtime();
+            mRemainingNodes = mNodes.size();
+            if (mRemainingNodes == 0) {
+                onFinished();
+                return;
+            }
+
+            for (Node<?> node : mNodes.values()) {
+                if (node.mPredecessors.isEmpty()) {
+                    launch(node);
+                }
+            }
+        });
+        return this;
+    }
+
+    /**
+     * 未定義の依存先と循環参照を検出する
+     */
+    private void validate() {
+        Map<String, Integer> inDegrees = new HashMap<>();
+        for (Node<?> node : mNodes.values()) {
+            node.mSuccessors.clear();
+            node.mPredecessorNodes.clear();
+        }
+        for (Node<?> node : mNodes.values()) {
+            for (String name : node.mPredecessors) {
+                Node<?> predecessor = mNodes.get(name);
+                if (predecessor == null) {
+                    throw new IllegalStateException("Node not found : " + name + " <- " + node.mName);
+                }
+                predecessor.mSuccessors.add(node);
+                node.mPredecessorNodes.add(predecessor);
+            }
+            inDegrees.put(node.mName, node.mPredecessors.size());
+        }
+
+        List<Node<?>> ready = new ArrayList<>();
+        for (Node<?> node : mNodes.values()) {
+            if (node.mPredecessors.isEmpty()) {
+                ready.add(node);
+            }
+        }
+
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            Node<?> node = ready.remove(ready.size() - 1);
+            ++visited;
+            for (Node<?> successor : node.mSuccessors) {
+                int degree = inDegrees.get(successor.mName) - 1;
+                inDegrees.put(successor.mName, degree);
+                if (degree == 0) {
+                    ready.add(successor);
+                }
+            }
+        }
+
+        if (visited != mNodes.size()) {
+            throw new IllegalStateException("Graph has cycle");
+        }
+    }
+
+    /**
+     * グラフ全体がキャンセル状態であればtrue
+     */
+    public boolean isCanceled() {
+        if (mDumpState != null && mController.isCanceled(mCallbackTime, mDumpState)) {
+            return true;
+        }
+
+        for (CancelCallback signal : mCancelSignals) {
+            if (signal.isCanceled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private <T> void launch(Node<T> node) {
+        node.mState = NodeState.Running;
+        node.mLaunchTime = SystemClock.elapsedRealtime();
+        new BackgroundTaskBuilder<T>(mController)
+                .executeOn(node.mTarget)
+                .callbackOn(CallbackTime.FireAndForget)
+                .cancelSignal(task -> isCanceled())
+                .async(task -> node.mAsync.call(this, task))
+                .completed((result, task) -> {
+                    node.mResult = result;
+                    onNodeFinished(node, NodeState.Completed, null);
+                })
+                .failed((error, task) -> {
+                    onNodeFinished(node, NodeState.Failed, error);
+                })
+                .canceled(task -> {
+                    onNodeFinished(node, NodeState.Canceled, new TaskCanceledException());
+                })
+                .start();
+    }
+
+    /**
+     * ノードの完了を処理する
+     *
+     * UIThreadから呼び出される。
+     */
+    private void onNodeFinished(Node<?> node, NodeState state, Exception error) {
+        node.mState = state;
+        node.mError = error;
+        node.mFinishTime = SystemClock.elapsedRealtime();
+        --mRemainingNodes;
+
+        for (Node<?> successor : node.mSuccessors) {
+            if (state == NodeState.Completed) {
+                if (successor.mState == NodeState.Pending && successor.isReady()) {
+                    launch(successor);
+                }
+            } else {
+                skip(successor, error);
+            }
+        }
+
+        if (mRemainingNodes == 0) {
+            onFinished();
+        }
+    }
+
+    /**
+     * 依存先が失敗したノードと、その下流を全てキャンセル扱いにする
+     */
+    private void skip(Node<?> node, Exception cause) {
+        if (node.mState != NodeState.Pending) {
+            return;
+        }
+
+        node.mState = NodeState.Canceled;
+        node.mError = new TaskCanceledException(cause);
+        --mRemainingNodes;
+        for (Node<?> successor : node.mSuccessors) {
+            skip(successor, cause);
+        }
+    }
+
+    private void onFinished() {
+        mFinished = true;
+        mFinishTime = SystemClock.elapsedRealtime();
+
+        mController.run(mCallbackTime, () -> {
+            Exception error = null;
+            for (Node<?> node : mNodes.values()) {
+                if (node.mState == NodeState.Failed) {
+                    error = node.mError;
+                    break;
+                }
+            }
+
+            if (error != null) {
+                if (mErrorCallback != null) {
+                    mErrorCallback.call(error, this);
+                }
+            } else if (isCanceled() || hasState(NodeState.Canceled)) {
+                if (mCancelCallback != null) {
+                    mCancelCallback.call(this);
+                }
+            } else if (mCompletedCallback != null) {
+                mCompletedCallback.call(this);
+            }
+        });
+    }
+
+    private boolean hasState(NodeState state) {
+        for (Node<?> node : mNodes.values()) {
+            if (node.mState == state) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isFinished() {
+        return mFinished;
+    }
+
+    /**
+     * ノードの戻り値を取得する
+     *
+     * 依存先として宣言したノードの戻り値は、ノードの処理中に取得できる。
+     * 型はノードの登録時に指定したものと一致させる必要がある。
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> T getResult(@NonNull String name) {
+        return (T) getNode(name).mResult;
+    }
+
+    /**
+     * ノードのエラーを取得する
+     */
+    @Nullable
+    public Exception getError(@NonNull String name) {
+        return getNode(name).mError;
+    }
+
+    /**
+     * ノードの状態を取得する
+     */
+    @NonNull
+    public NodeState getNodeState(@NonNull String name) {
+        return getNode(name).mState;
+    }
+
+    /**
+     * ノードの実行時間を取得する
+     */
+    public long getNodeTimeMs(@NonNull String name) {
+        return getNode(name).getTimeMs();
+    }
+
+    /**
+     * グラフ全体の実行時間を取得する
+     */
+    public long getElapsedMs() {
+        if (!mFinished) {
+            return 0;
+        }
+        return mFinishTime - mStartTime;
+    }
+
+    /**
+     * 最も時間のかかった依存経路(クリティカルパス)のノード名を、実行順に取得する
+     *
+     * グラフの完了後に有効となる。
+     */
+    @NonNull
+    public List<String> getCriticalPath() {
+        Map<Node<?>, Long> costs = new HashMap<>();
+        Map<Node<?>, Node<?>> parents = new HashMap<>();
+        Node<?> last = null;
+        for (Node<?> node : topologicalOrder()) {
+            // 所要時間が0の依存先しか無い場合も、経路を途切れさせない
+            Node<?> parent = null;
+            long cost = 0;
+            for (Node<?> predecessor : node.mPredecessorNodes) {
+                if (parent == null || costs.get(predecessor) > cost) {
+                    cost = costs.get(predecessor);
+                    parent = predecessor;
+                }
+            }
+            if (parent != null) {
+                parents.put(node, parent);
+            }
+            cost += node.getTimeMs();
+            costs.put(node, cost);
+            if (last == null || cost > costs.get(last)) {
+                last = node;
+            }
+        }
+
+        List<String> result = new ArrayList<>();
+        for (Node<?> node = last; node != null; node = parents.get(node)) {
+            result.add(0, node.mName);
+        }
+        return result;
+    }
+
+    /**
+     * クリティカルパスの所要時間を取得する
+     */
+    public long getCriticalPathMs() {
+        long result = 0;
+        for (String name : getCriticalPath()) {
+            result += getNodeTimeMs(name);
+        }
+        return result;
+    }
+
+    private List<Node<?>> topologicalOrder() {
+        List<Node<?>> result = new ArrayList<>();
+        Map<Node<?>, Boolean> visited = new HashMap<>();
+        for (Node<?> node : mNodes.values()) {
+            visit(node, visited, result);
+        }
+        return result;
+    }
+
+    private void visit(Node<?> node, Map<Node<?>, Boolean> visited, List<Node<?>> result) {
+        if (visited.containsKey(node)) {
+            return;
+        }
+        visited.put(node, Boolean.TRUE);
+        for (Node<?> predecessor : node.mPredecessorNodes) {
+            visit(predecessor, visited, result);
+        }
+        result.add(node);
+    }
+
+    @NonNull
+    private Node<?> getNode(String name) {
+        Node<?> node = mNodes.get(name);
+        if (node == null) {
+            throw new IllegalArgumentException("Node not found : " + name);
+        }
+        return node;
+    }
+
+    public enum NodeState {
+        /**
+         * 依存先の完了待ち
+         */
+        Pending,
+
+        /**
+         * 実行中
+         */
+        Running,
+
+        /**
+         * 完了
+         */
+        Completed,
+
+        /**
+         * 失敗
+         */
+        Failed,
+
+        /**
+         * キャンセルされたか、依存先が失敗したため実行されなかった
+         */
+        Canceled,
+    }
+
+    static class Node<T> {
+        final String mName;
+
+        final ExecuteTarget mTarget;
+
+        final Async<T> mAsync;
+
+        final List<String> mPredecessors = new ArrayList<>();
+
+        final List<Node<?>> mPredecessorNodes = new ArrayList<>();
+
+        final List<Node<?>> mSuccessors = new ArrayList<>();
+
+        volatile NodeState mState = NodeState.Pending;
+
+        volatile T mResult;
+
+        Exception mError;
+
+        long mLaunchTime;
+
+        long mFinishTime;
+
+        Node(String name, ExecuteTarget target, Async<T> async) {
+            mName = name;
+            mTarget = target;
+            mAsync = async;
+        }
+
+        /**
+         * 全ての依存先が完了していればtrue
+         */
+        boolean isReady() {
+            for (Node<?> predecessor : mPredecessorNodes) {
+                if (predecessor.mState != NodeState.Completed) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long getTimeMs() {
+            if (mLaunchTime == 0 || mFinishTime == 0) {
+                return 0;
+            }
+            return mFinishTime - mLaunchTime;
+        }
+    }
+
+    /**
+     * ノードの処理を記述する
+     */
+    public interface Async<T> {
+        T call(TaskGraph graph, BackgroundTask<T> task) throws Exception;
+    }
+
+    /**
+     * コールバックを記述する
+     */
+    public interface Action0 {
+        void call(TaskGraph graph);
+    }
+
+    /**
+     * エラー時のコールバックを記述する
+     */
+    public interface ErrorAction {
+        void call(Exception it, TaskGraph graph);
+    }
+}
@@ -0,0 +1,136 @@
+package com.eaglesakura.cerberus;
+
+import android.support.annotation.NonNull;
+
+/**
+ * タスクの実行状況をExecuteTarget / CallbackTimeごとに集計する
+ *
+ * <ul>
+ * <li>実行待ち時間 : スレッドへ投げてから処理が開始されるまで</li>
+ * <li>実行時間 : 非同期処理の開始から終了まで</li>
+ * <li>コールバック待ち時間 : 処理が終わってからコールバックが呼び出されるまで</li>
+ * </ul>
+ *
+ * {@link #snapshot()} で取得した値を定期的に監視システムへ送ることを想定している。
+ */
+public class TaskMetrics {
+
+    static final LatencyHistogram[] sQueueWait = newHistograms(ExecuteTarget.values().length);
+
+    static final LatencyHistogram[] sRunTime = newHistograms(ExecuteTarget.values().length);
+
+    static final LatencyHistogram[] sCallbackDelay = newHistograms(CallbackTime.values().length);
+
+    private TaskMetrics() {
+    }
+
+    private static LatencyHistogram[] newHistograms(int count) {
+        LatencyHistogram[] result = new LatencyHistogram[count];
+        for (int i = 0; i < count; ++i) {
+            result[i] = new LatencyHistogram();
+        }
+        return result;
+    }
+
+    /**
+     * 現在の集計結果を取得する
+     */
+    @NonNull
+    public static Snapshot snapshot() {
+        return new Snapshot();
+    }
+
+    /**
+     * 集計結果を初期化する
+     */
+    public static void reset() {
+        for (LatencyHistogram[] histograms : new LatencyHistogram[][]{sQueueWait, sRunTime, sCallbackDelay}) {
+            for (LatencyHistogram histogram : histograms) {
+                histogram.reset();
+            }
+        }
+    }
+
+    /**
+     * ある時点の集計結果
+     */
+    public static class Snapshot {
+        private final long mTimestamp = System.currentTimeMillis();
+
+        private final LatencyHistogram.Snapshot[] mQueueWait = new LatencyHistogram.Snapshot[ExecuteTarget.values().length];
+
+        private final LatencyHistogram.Snapshot[] mRunTime = new LatencyHistogram.Snapshot[ExecuteTarget.values().length];
+
+        private final LatencyHistogram.Snapshot[] mCallbackDelay = new LatencyHistogram.Snapshot[CallbackTime.values().length];
+
+        private final int[] mQueueDepth = new int[ExecuteTarget.values().length];
+
+        private final int[] mActiveThreads = new int[ExecuteTarget.values().length];
+
+        private final int[] mPoolSize = new int[ExecuteTarget.values().length];
+
+        Snapshot() {
+            for (ExecuteTarget target : ExecuteTarget.values()) {
+                int index = target.ordinal();
+                mQueueWait[index] = sQueueWait[index].snapshot();
+                mRunTime[index] = sRunTime[index].snapshot();
+                mQueueDepth[index] = ThreadControllerImpl.getQueueDepth(target);
+                mActiveThreads[index] = ThreadControllerImpl.getActiveThreads(target);
+                mPoolSize[index] = ThreadControllerImpl.getPoolSize(target);
+            }
+
+            for (CallbackTime callbackTime : CallbackTime.values()) {
+                mCallbackDelay[callbackTime.ordinal()] = sCallbackDelay[callbackTime.ordinal()].snapshot();
+            }
+        }
+
+        /**
+         * 集計した時刻(System.currentTimeMillis)
+         */
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        /**
+         * 実行待ち時間の分布
+         */
+        public LatencyHistogram.Snapshot getQueueWait(@NonNull ExecuteTarget target) {
+            return mQueueWait[target.ordinal()];
+        }
+
+        /**
+         * 実行時間の分布
+         */
+        public LatencyHistogram.Snapshot getRunTime(@NonNull ExecuteTarget target) {
+            return mRunTime[target.ordinal()];
+        }
+
+        /**
+         * コールバック待ち時間の分布
+         */
+        public LatencyHistogram.Snapshot getCallbackDelay(@NonNull CallbackTime callbackTime) {
+            return mCallbackDelay[callbackTime.ordinal()];
+        }
+
+        /**
+         * 実行待ちのタスク数
+         */
+        public int getQueueDepth(@NonNull ExecuteTarget target) {
+            return mQueueDepth[target.ordinal()];
+        }
+
+        /**
+         * 処理中のスレッド数
+         */
+        public int getActiveThreads(@NonNull ExecuteTarget target) {
+            return mActiveThreads[target.ordinal()];
+        }
+
+        /**
+         * 生存しているスレッド数
+         */
+        public int getPoolSize(@NonNull ExecuteTarget target) {
+            return mPoolSize[target.ordinal()];
+        }
+    }
+}
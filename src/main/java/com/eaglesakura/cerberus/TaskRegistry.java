@@ -0,0 +1,238 @@
+package com.eaglesakura.cerberus;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 処理中のタスクを管理する
+ *
+ * {@link #enable()} 以降にstart()されたタスクは、コールバックが呼び出されるまで登録される。
+ * タスクは弱参照で保持されるため、登録によってタスクが解放されなくなることは無い。
+ * {@link #dump()} でバグレポートやdumpsys向けに現在の状態を出力できる。
+ */
+public class TaskRegistry {
+
+    private static volatile boolean sEnabled;
+
+    private static final Map<BackgroundTask<?>, Boolean> sTasks = Collections.synchronizedMap(new WeakHashMap<BackgroundTask<?>, Boolean>());
+
+    private TaskRegistry() {
+    }
+
+    /**
+     * 登録を開始する
+     */
+    public static void enable() {
+        sEnabled = true;
+    }
+
+    /**
+     * 登録を終了し、登録済みのタスクを破棄する
+     */
+    public static void disable() {
+        sEnabled = false;
+        sTasks.clear();
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * タスクが開始された
+     */
+    static void register(BackgroundTask<?> task) {
+        if (!sEnabled) {
+            return;
+        }
+        sTasks.put(task, Boolean.TRUE);
+    }
+
+    /**
+     * タスクのコールバックが呼び出された
+     */
+    static void unregister(BackgroundTask<?> task) {
+        if (!sEnabled) {
+            return;
+        }
+        sTasks.remove(task);
+    }
+
+    /**
+     * 処理中のタスクを取得する
+     *
+     * 古いタスクから順に並べられる。
+     * 破棄済みのLifecycleOwnerに属するタスクは、コールバックが呼び出されないため含まれない。
+     */
+    @NonNull
+    public static List<TaskInfo> getTasks() {
+        List<BackgroundTask<?>> tasks;
+        synchronized (sTasks) {
+            tasks = new ArrayList<>(sTasks.keySet());
+        }
+
+        long now = SystemClock.uptimeMillis();
+        List<TaskInfo> result = new ArrayList<>(tasks.size());
+        for (BackgroundTask<?> task : tasks) {
+            if (task != null && !task.mCallbackQueue.isDestroyed()) {
+                result.add(new TaskInfo(task, now));
+            }
+        }
+        Collections.sort(result, (a, b) -> Long.compare(b.mAgeMs, a.mAgeMs));
+        return result;
+    }
+
+    /**
+     * 処理中のタスクを出力する
+     */
+    public static void dump(@NonNull PrintWriter writer) {
+        List<TaskInfo> tasks = getTasks();
+        writer.println("Cerberus tasks (" + tasks.size() + ")");
+        dump(writer, "Running", tasks, Phase.Running);
+        dump(writer, "Queued", tasks, Phase.Queued);
+        dump(writer, "Pending callback", tasks, Phase.PendingCallback);
+        writer.flush();
+    }
+
+    /**
+     * 処理中のタスクを文字列で取得する
+     */
+    @NonNull
+    public static String dump() {
+        StringWriter result = new StringWriter();
+        dump(new PrintWriter(result));
+        return result.toString();
+    }
+
+    private static void dump(PrintWriter writer, String title, List<TaskInfo> tasks, Phase phase) {
+        int count = 0;
+        for (TaskInfo task : tasks) {
+            if (task.getPhase() == phase) {
+                ++count;
+            }
+        }
+
+        writer.println("  " + title + " (" + count + ")");
+        for (TaskInfo task : tasks) {
+            if (task.getPhase() == phase) {
+                writer.println("    " + task);
+            }
+        }
+    }
+
+    /**
+     * タスクの処理段階
+     */
+    public enum Phase {
+        /**
+         * 実行待ち
+         */
+        Queued,
+
+        /**
+         * 実行中
+         */
+        Running,
+
+        /**
+         * 処理が終わり、コールバック待ち
+         */
+        PendingCallback,
+    }
+
+    /**
+     * ある時点でのタスクの状態
+     */
+    public static class TaskInfo {
+        private final BackgroundTask.State mState;
+
+        private final Phase mPhase;
+
+        private final String mOwner;
+
+        private final ExecuteTarget mTarget;
+
+        private final CallbackTime mCallbackTime;
+
+        private final long mAgeMs;
+
+        private final String mTag;
+
+        private final boolean mCanceled;
+
+        TaskInfo(BackgroundTask<?> task, long now) {
+            mState = task.getState();
+            mOwner = task.mCallbackQueue.getOwnerName();
+            mTarget = task.mExecuteTarget;
+            mCallbackTime = task.mCallbackTime;
+            mAgeMs = now - task.mStartedUptimeMs;
+            mTag = task.mTag;
+            mCanceled = task.isCanceled();
+
+            if (mState == BackgroundTask.State.Finished) {
+                mPhase = Phase.PendingCallback;
+            } else if (mState == BackgroundTask.State.Running) {
+                mPhase = Phase.Running;
+            } else {
+                mPhase = Phase.Queued;
+            }
+        }
+
+        public BackgroundTask.State getState() {
+            return mState;
+        }
+
+        public Phase getPhase() {
+            return mPhase;
+        }
+
+        /**
+         * タスクを生成したPendingCallbackQueueのLifecycleOwner
+         */
+        public String getOwner() {
+            return mOwner;
+        }
+
+        public ExecuteTarget getTarget() {
+            return mTarget;
+        }
+
+        public CallbackTime getCallbackTime() {
+            return mCallbackTime;
+        }
+
+        /**
+         * start()からの経過時間
+         */
+        public long getAgeMs() {
+            return mAgeMs;
+        }
+
+        public String getTag() {
+            return mTag;
+        }
+
+        public boolean isCanceled() {
+            return mCanceled;
+        }
+
+        @Override
+        public String toString() {
+            return (mTag != null ? mTag : "(untagged)") +
+                    " state=" + mState +
+                    " target=" + mTarget +
+                    " callback=" + mCallbackTime +
+                    " age=" + mAgeMs + "ms" +
+                    " owner=" + mOwner +
+                    (mCanceled ? " canceled" : "");
+        }
+    }
+}
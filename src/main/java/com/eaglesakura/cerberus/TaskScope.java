@@ -0,0 +1,163 @@
+package com.eaglesakura.cerberus;
+
+import com.eaglesakura.cerberus.error.TaskCanceledException;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 親タスクと子タスクの寿命を結びつける
+ *
+ * {@link BackgroundTask#scope()} から取得し、{@link #newTask()} で子タスクを生成する。
+ * <ul>
+ * <li>親タスクがキャンセルされると、子タスクもキャンセル状態となる</li>
+ * <li>子タスクが失敗すると、兄弟タスクはキャンセル状態となる</li>
+ * <li>親タスクは全ての子タスクの処理が終わるまで完了しない</li>
+ * </ul>
+ *
+ * 子タスクの待ち合わせは親タスクのスレッドで行われるため、
+ * 親タスクと同じ直列キュー({@link ExecuteTarget#LocalQueue} / {@link ExecuteTarget#GlobalQueue})で子タスクを実行してはならない。
+ */
+public class TaskScope {
+
+    @NonNull
+    final BackgroundTask<?> mParent;
+
+    /**
+     * 処理が終わっていない子タスク
+     */
+    private final List<BackgroundTask<?>> mChildren = new ArrayList<>();
+
+    /**
+     * 最初に発生したエラー
+     */
+    private volatile Exception mFailure;
+
+    TaskScope(@NonNull BackgroundTask<?> parent) {
+        mParent = parent;
+    }
+
+    /**
+     * 子タスクを生成する
+     *
+     * 子タスクは親タスクと同じ {@link PendingCallbackQueue} / {@link CallbackTime} を引き継ぐ。
+     */
+    public <T> BackgroundTaskBuilder<T> newTask() {
+        BackgroundTaskBuilder<T> builder = new BackgroundTaskBuilder<T>(mParent.mCallbackQueue)
+                .callbackOn(mParent.mCallbackTime)
+                .cancelSignal(task -> isCanceled());
+        builder.mTask.mParentScope = this;
+        return builder;
+    }
+
+    /**
+     * スコープがキャンセル状態であればtrue
+     */
+    public boolean isCanceled() {
+        return mFailure != null || mParent.isCanceled();
+    }
+
+    /**
+     * 子タスクが開始された
+     */
+    void onChildStarted(BackgroundTask<?> child) {
+        synchronized (mChildren) {
+            mChildren.add(child);
+        }
+    }
+
+    /**
+     * 子タスクの処理が終わった
+     *
+     * @param error 失敗した場合はその例外
+     */
+    void onChildSettled(BackgroundTask<?> child, Exception error) {
+        if (error != null && !(error instanceof TaskCanceledException)) {
+            fail(error);
+        }
+
+        synchronized (mChildren) {
+            mChildren.remove(child);
+            mChildren.notifyAll();
+        }
+    }
+
+    private void fail(Exception error) {
+        synchronized (mChildren) {
+            if (mFailure != null) {
+                return;
+            }
+            mFailure = error;
+
+            // 待機処理中の子タスクを起こす
+            for (BackgroundTask<?> child : mChildren) {
+                child.wakeIfCanceled();
+            }
+            mChildren.notifyAll();
+        }
+    }
+
+    /**
+     * 全ての子タスクの処理が終わるまで待つ
+     *
+     * @param error 親タスクが失敗した場合はその例外
+     */
+    void join(Exception error) throws Exception {
+        if (error != null) {
+            // 親が失敗したので、子を全てキャンセルさせる
+            fail(error);
+        }
+
+        // 子タスクの終了と失敗は通知され、親タスクのキャンセルは割り込みによって起こされる
+        boolean interrupted = false;
+        mParent.beginWait();
+        try {
+            synchronized (mChildren) {
+                while (!isSettled()) {
+                    try {
+                        mChildren.wait();
+                    } catch (InterruptedException e) {
+                        // キャンセルされても、実行中の子タスクは待つ
+                        interrupted = true;
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                // 自身の待機処理による割り込みでなければ、endWait()で消費されずに残る
+                Thread.currentThread().interrupt();
+            }
+            mParent.endWait();
+        }
+
+        if (error != null) {
+            throw error;
+        } else if (mFailure != null) {
+            throw mFailure;
+        }
+    }
+
+    /**
+     * 全ての子タスクの処理が終わっていればtrue
+     *
+     * キャンセル状態であれば、まだ実行されていない子タスクは待たない。
+     */
+    private boolean isSettled() {
+        if (mChildren.isEmpty()) {
+            return true;
+        }
+
+        if (!isCanceled()) {
+            return false;
+        }
+
+        for (BackgroundTask<?> child : mChildren) {
+            if (child.getState() == BackgroundTask.State.Running) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,228 @@
+package com.eaglesakura.cerberus;
+
+import com.eaglesakura.cerberus.error.TaskCanceledException;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * タスクのキャンセルと連動したデータ転送を行う
+ *
+ * 転送はチャンク単位で行われ、チャンクごとにキャンセルチェックと進捗通知が行われる。
+ * 転送中にタスクがキャンセルされた場合、スレッドへの割り込みによってチャンネルが閉じられ、
+ * 読み込み待ちのスレッドも即座に解放される。
+ * キャンセルシグナルは転送中も {@link #CANCEL_CHECK_INTERVAL_MS} ごとに {@link TaskTimer} のスレッドで確認される。
+ * 進捗は転送済みのバイト数(Long)として {@link BackgroundTask#publishProgress(Object)} で通知される。
+ */
+public class TaskStreams {
+
+    /**
+     * ストリームコピー時のバッファサイズ
+     */
+    static final int BUFFER_SIZE = 1024 * 64;
+
+    /**
+     * ファイル転送時のチャンクサイズ
+     */
+    static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * 転送中にキャンセルシグナルを確認する間隔
+     */
+    static final long CANCEL_CHECK_INTERVAL_MS = 100;
+
+    /**
+     * スレッドごとに再利用するダイレクトバッファ
+     *
+     * 使用中は取り除かれるため、同じスレッドで入れ子に呼び出された場合は新たに確保される。
+     */
+    private static final ThreadLocal<ByteBuffer> sBuffers = new ThreadLocal<>();
+
+    private TaskStreams() {
+    }
+
+    /**
+     * コピー用のバッファを取得する
+     */
+    static ByteBuffer obtainBuffer() {
+        ByteBuffer buffer = sBuffers.get();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        sBuffers.set(null);
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * コピー用のバッファを返却し、同じスレッドでの次回のコピーで再利用させる
+     */
+    static void recycleBuffer(ByteBuffer buffer) {
+        sBuffers.set(buffer);
+    }
+
+    /**
+     * ストリームの内容をファイルへ書き込む。
+     * <p>
+     * {@link FileChannel#transferFrom(ReadableByteChannel, long, long)} を使用し、ヒープ上の配列を経由しない。
+     *
+     * @return 転送したバイト数
+     */
+    public static long copy(@NonNull BackgroundTask<?> task, @NonNull InputStream src, @NonNull File dst) throws IOException, TaskCanceledException {
+        FileOutputStream os = new FileOutputStream(dst);
+        try {
+            return transfer(task, Channels.newChannel(src), os.getChannel());
+        } finally {
+            os.close();
+        }
+    }
+
+    /**
+     * チャンネルの内容をファイルへ書き込む。
+     * <p>
+     * srcはブロッキングモードである必要がある。
+     *
+     * @return 転送したバイト数
+     */
+    public static long transfer(@NonNull BackgroundTask<?> task, @NonNull ReadableByteChannel src, @NonNull FileChannel dst) throws IOException, TaskCanceledException {
+        task.beginWait();
+        CancelWatcher watcher = new CancelWatcher(task);
+        try {
+            long position = dst.position();
+            long total = 0;
+            while (true) {
+                task.throwIfCanceled();
+
+                // ブロッキングチャンネルでは、終端に達した場合のみ0となる
+                long transferred = dst.transferFrom(src, position, TRANSFER_CHUNK_SIZE);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                total += transferred;
+                task.publishProgress(total);
+            }
+            dst.position(position);
+            return total;
+        } catch (ClosedChannelException e) {
+            throw toCanceled(task, e);
+        } finally {
+            watcher.stop();
+            task.endWait();
+        }
+    }
+
+    /**
+     * ストリームの内容をコピーする。
+     * <p>
+     * ダイレクトバッファを経由するため、大きなデータでもヒープを消費しない。
+     *
+     * @return 転送したバイト数
+     */
+    public static long copy(@NonNull BackgroundTask<?> task, @NonNull InputStream src, @NonNull OutputStream dst) throws IOException, TaskCanceledException {
+        return copy(task, Channels.newChannel(src), Channels.newChannel(dst));
+    }
+
+    /**
+     * チャンネルの内容をコピーする。
+     * <p>
+     * ダイレクトバッファを経由するため、大きなデータでもヒープを消費しない。
+     * バッファは実行スレッドごとに再利用される。
+     *
+     * @return 転送したバイト数
+     */
+    public static long copy(@NonNull BackgroundTask<?> task, @NonNull ReadableByteChannel src, @NonNull WritableByteChannel dst) throws IOException, TaskCanceledException {
+        ByteBuffer buffer = obtainBuffer();
+        task.beginWait();
+        CancelWatcher watcher = new CancelWatcher(task);
+        try {
+            long total = 0;
+            while (true) {
+                task.throwIfCanceled();
+
+                int read = src.read(buffer);
+                if (read < 0) {
+                    break;
+                }
+
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    dst.write(buffer);
+                }
+                buffer.clear();
+
+                total += read;
+                task.publishProgress(total);
+            }
+            return total;
+        } catch (ClosedChannelException e) {
+            throw toCanceled(task, e);
+        } finally {
+            watcher.stop();
+            task.endWait();
+            recycleBuffer(buffer);
+        }
+    }
+
+    /**
+     * キャンセルによってチャンネルが閉じられた場合、キャンセル例外に変換する
+     */
+    private static IOException toCanceled(BackgroundTask<?> task, ClosedChannelException e) throws TaskCanceledException {
+        if (task.isCanceled()) {
+            throw new TaskCanceledException(e);
+        }
+        return e;
+    }
+
+    /**
+     * 転送中のキャンセルシグナルを監視する
+     *
+     * キャンセルシグナルはライフサイクルと異なり変化が通知されないため、定期的に確認して待機中のスレッドを起こす。
+     */
+    private static class CancelWatcher implements Runnable {
+        final BackgroundTask<?> mTask;
+
+        private TaskTimer.Timeout mTimeout;
+
+        private boolean mStopped;
+
+        CancelWatcher(BackgroundTask<?> task) {
+            mTask = task;
+            schedule();
+        }
+
+        @Override
+        public void run() {
+            if (mTask.isCanceled()) {
+                // 割り込みによって、読み書き中のチャンネルが閉じられる
+                mTask.wakeIfCanceled();
+            } else {
+                schedule();
+            }
+        }
+
+        private synchronized void schedule() {
+            if (!mStopped) {
+                mTimeout = TaskTimer.getInstance().schedule(this, CANCEL_CHECK_INTERVAL_MS);
+            }
+        }
+
+        synchronized void stop() {
+            mStopped = true;
+            if (mTimeout != null) {
+                mTimeout.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.eaglesakura.cerberus;
+
+import android.os.Process;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ExecuteTargetごとのスレッドを生成する
+ *
+ * 生成されるスレッドの総数は {@link ExecuteTargetSettings#setMaxThreads(int)} で制限され、
+ * 上限に達している場合はスレッドを生成しない。
+ * その場合、タスクは既存のスレッドが空くか、他のスレッドが終了するまで実行待ちとなる。
+ */
+class TaskThreadFactory implements ThreadFactory {
+
+    /**
+     * プロセス内で生存しているスレッド数
+     */
+    static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    private final ExecuteTarget mTarget;
+
+    private final AtomicInteger mThreadNumber = new AtomicInteger();
+
+    TaskThreadFactory(ExecuteTarget target) {
+        mTarget = target;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        if (!acquire()) {
+            return null;
+        }
+
+        int priority = ExecuteTargetSettings.getThreadPriority(mTarget);
+        Runnable body = () -> {
+            try {
+                if (priority != ExecuteTargetSettings.THREAD_PRIORITY_INHERIT) {
+                    Process.setThreadPriority(priority);
+                }
+                runnable.run();
+            } finally {
+                release();
+            }
+        };
+
+        Thread thread = null;
+        try {
+            ThreadFactory factory = ExecuteTargetSettings.getThreadFactory(mTarget);
+            if (factory != null) {
+                thread = factory.newThread(body);
+            } else {
+                String name = "Cerberus/" + mTarget.name() + "-" + mThreadNumber.incrementAndGet();
+                thread = new Thread(null, body, name, ExecuteTargetSettings.getThreadStackSize(mTarget));
+            }
+            return thread;
+        } finally {
+            if (thread == null) {
+                sThreadCount.decrementAndGet();
+            }
+        }
+    }
+
+    private static boolean acquire() {
+        while (true) {
+            int count = sThreadCount.get();
+            if (count >= ExecuteTargetSettings.getMaxThreads()) {
+                return false;
+            }
+            if (sThreadCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static void release() {
+        sThreadCount.decrementAndGet();
+        // 上限によってスレッドを得られなかったプールを動かす
+        ThreadControllerImpl.onThreadReleased();
+    }
+}
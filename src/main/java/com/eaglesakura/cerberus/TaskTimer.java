@@ -0,0 +1,214 @@
+package com.eaglesakura.cerberus;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * プロセス共有のタイマー
+ *
+ * ハッシュ化されたタイマーホイールで実装され、タイマーの数に関わらず1スレッドで管理される。
+ * 精度は {@link #TICK_MS} 単位となる。
+ * 時間切れ時の処理はタイマースレッドで実行されるため、重い処理は別スレッドへ投げること。
+ * 処理で発生した例外はUIThreadで投げ直される。
+ */
+class TaskTimer {
+
+    /**
+     * 1tickの時間
+     */
+    static final long TICK_MS = 10;
+
+    /**
+     * ホイールのバケット数(2の累乗)
+     */
+    static final int WHEEL_SIZE = 512;
+
+    private static final long TICK_NS = TimeUnit.MILLISECONDS.toNanos(TICK_MS);
+
+    private static TaskTimer sInstance;
+
+    private final List<Timeout>[] mWheel = new List[WHEEL_SIZE];
+
+    /**
+     * ホイールへ登録待ちのタイマー
+     */
+    private final Queue<Timeout> mNewTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final Object mLock = new Object();
+
+    /**
+     * 管理中のタイマー数
+     */
+    private int mTimeoutCount;
+
+    private Thread mWorker;
+
+    /**
+     * ホイールの基準時刻
+     */
+    private long mStartTime;
+
+    /**
+     * 現在のtick
+     */
+    private long mTick;
+
+    TaskTimer() {
+        for (int i = 0; i < WHEEL_SIZE; ++i) {
+            mWheel[i] = new ArrayList<>();
+        }
+    }
+
+    static TaskTimer getInstance() {
+        synchronized (TaskTimer.class) {
+            if (sInstance == null) {
+                sInstance = new TaskTimer();
+            }
+            return sInstance;
+        }
+    }
+
+    /**
+     * 指定時間後に処理を実行する
+     */
+    @NonNull
+    Timeout schedule(@NonNull Runnable action, long delayMs) {
+        Timeout timeout = new Timeout(action, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs)));
+        synchronized (mLock) {
+            mNewTimeouts.add(timeout);
+            ++mTimeoutCount;
+            if (mWorker == null) {
+                mWorker = new Thread(this::loop, "Cerberus/Timer");
+                mWorker.setDaemon(true);
+                mWorker.start();
+            }
+            mLock.notifyAll();
+        }
+        return timeout;
+    }
+
+    private void loop() {
+        while (true) {
+            try {
+                synchronized (mLock) {
+                    if (mTimeoutCount == 0) {
+                        while (mTimeoutCount == 0) {
+                            mLock.wait();
+                        }
+                        // ホイールは空なので、基準時刻を現在に合わせる
+                        mStartTime = System.nanoTime();
+                        mTick = 0;
+                    }
+                }
+
+                long sleepNs = (mStartTime + (mTick + 1) * TICK_NS) - System.nanoTime();
+                if (sleepNs > 0) {
+                    Thread.sleep(TimeUnit.NANOSECONDS.toMillis(sleepNs) + 1);
+                }
+
+                transferTimeouts();
+                expireTimeouts(mWheel[(int) (mTick & (WHEEL_SIZE - 1))]);
+                ++mTick;
+            } catch (InterruptedException e) {
+                // タイマースレッドは止めない
+            }
+        }
+    }
+
+    /**
+     * 新しいタイマーをバケットに振り分ける
+     */
+    private void transferTimeouts() {
+        Timeout timeout;
+        while ((timeout = mNewTimeouts.poll()) != null) {
+            if (timeout.isCanceled()) {
+                onRemoved();
+                continue;
+            }
+
+            long calculated = (timeout.mDeadline - mStartTime) / TICK_NS;
+            timeout.mRemainingRounds = (calculated - mTick) / WHEEL_SIZE;
+            long ticks = Math.max(calculated, mTick);
+            mWheel[(int) (ticks & (WHEEL_SIZE - 1))].add(timeout);
+        }
+    }
+
+    private void expireTimeouts(List<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.isCanceled()) {
+                iterator.remove();
+                onRemoved();
+            } else if (timeout.mRemainingRounds <= 0) {
+                iterator.remove();
+                onRemoved();
+                timeout.expire();
+            } else {
+                --timeout.mRemainingRounds;
+            }
+        }
+    }
+
+    private void onRemoved() {
+        synchronized (mLock) {
+            --mTimeoutCount;
+        }
+    }
+
+    /**
+     * 登録されたタイマー
+     */
+    static class Timeout {
+        final Runnable mAction;
+
+        final long mDeadline;
+
+        /**
+         * 時間切れまでのホイール周回数
+         */
+        long mRemainingRounds;
+
+        private final AtomicBoolean mDone = new AtomicBoolean();
+
+        Timeout(Runnable action, long deadline) {
+            mAction = action;
+            mDeadline = deadline;
+        }
+
+        /**
+         * タイマーを取り消す
+         *
+         * @return まだ時間切れになっていなければtrue
+         */
+        boolean cancel() {
+            return mDone.compareAndSet(false, true);
+        }
+
+        boolean isCanceled() {
+            return mDone.get();
+        }
+
+        private void expire() {
+            if (!mDone.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                mAction.run();
+            } catch (RuntimeException | Error e) {
+                // タイマースレッドは止めず、UIThreadで投げ直す
+                PendingCallbackQueue.sHandler.post(() -> {
+                    throw e;
+                });
+            }
+        }
+    }
+}
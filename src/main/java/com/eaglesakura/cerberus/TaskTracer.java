@@ -0,0 +1,338 @@
+package com.eaglesakura.cerberus;
+
+import android.os.Build;
+import android.os.Looper;
+import android.os.Process;
+import android.os.Trace;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * タスクの実行履歴を記録し、Chrome Trace Event形式で出力する
+ *
+ * 記録は固定長のリングバッファに対して行われ、古いイベントから上書きされる。
+ * 出力したJSONは chrome://tracing や Perfetto で開くことができる。
+ * 無効な間は、記録処理はvolatile変数の読み込みのみとなる。
+ * <ul>
+ * <li>タスク全体 : start()からコールバックまでを非同期イベントとして記録する</li>
+ * <li>実行 : 非同期処理の実行中を、実行スレッド上のイベントとして記録する</li>
+ * <li>コールバック : コールバックの実行中を、UIThread上のイベントとして記録する</li>
+ * </ul>
+ */
+public class TaskTracer {
+
+    /**
+     * android.os.Traceのセクション名の最大長
+     */
+    static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    private static volatile TaskTracer sInstance;
+
+    private static final AtomicLong sTraceId = new AtomicLong();
+
+    private final AtomicReferenceArray<Event> mEvents;
+
+    /**
+     * 次に書き込むイベント番号
+     */
+    private final AtomicLong mEventIndex = new AtomicLong();
+
+    /**
+     * android.os.Traceへもセクションを出力する場合true
+     */
+    private final boolean mSystemTrace;
+
+    private TaskTracer(int capacity, boolean systemTrace) {
+        mEvents = new AtomicReferenceArray<>(Math.max(1, capacity));
+        mSystemTrace = systemTrace && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    /**
+     * 記録を開始する。
+     * <p>
+     * 既に記録中の場合、それまでの記録は破棄される。
+     *
+     * @param capacity    保持するイベント数
+     * @param systemTrace android.os.Traceへもセクションを出力する場合true、API 18未満では無視される
+     */
+    public static void enable(int capacity, boolean systemTrace) {
+        sInstance = new TaskTracer(capacity, systemTrace);
+    }
+
+    /**
+     * 記録を終了し、記録したイベントを破棄する
+     */
+    public static void disable() {
+        sInstance = null;
+    }
+
+    public static boolean isEnabled() {
+        return sInstance != null;
+    }
+
+    /**
+     * 記録したイベントをChrome Trace Event形式で出力する
+     */
+    public static void dump(@NonNull Writer writer) throws IOException {
+        TaskTracer tracer = sInstance;
+        writer.write("{\"traceEvents\":[");
+        if (tracer != null) {
+            tracer.write(writer);
+        }
+        writer.write("]}");
+        writer.flush();
+    }
+
+    /**
+     * 記録したイベントをChrome Trace Event形式の文字列で取得する
+     */
+    @NonNull
+    public static String dump() {
+        StringWriter writer = new StringWriter();
+        try {
+            dump(writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * タスクが開始された
+     */
+    static void onTaskStarted(BackgroundTask<?> task, ExecuteTarget target) {
+        TaskTracer tracer = sInstance;
+        if (tracer == null) {
+            return;
+        }
+        task.mTraceId = sTraceId.incrementAndGet();
+        task.mTraceName = (task.mTag != null ? task.mTag : target + "/" + task.mCallbackTime) + "#" + task.mTraceId;
+        tracer.record('b', task.mTraceName, task.mTraceId, "start");
+    }
+
+    /**
+     * タスクが実行スレッドへ投げられた
+     */
+    static void onTaskQueued(BackgroundTask<?> task) {
+        TaskTracer tracer = sInstance;
+        if (tracer == null || task.mTraceId == 0) {
+            return;
+        }
+        tracer.record('n', task.mTraceName, task.mTraceId, "queued");
+    }
+
+    /**
+     * 非同期処理が開始された
+     */
+    static void onTaskRunning(BackgroundTask<?> task) {
+        TaskTracer tracer = sInstance;
+        if (tracer == null || task.mTraceId == 0) {
+            return;
+        }
+        tracer.record('B', task.mTraceName, task.mTraceId, "running");
+        tracer.beginSection(task.mTraceName);
+    }
+
+    /**
+     * 非同期処理が終了した
+     */
+    static void onTaskFinished(BackgroundTask<?> task) {
+        TaskTracer tracer = sInstance;
+        if (tracer == null || task.mTraceId == 0) {
+            return;
+        }
+        tracer.endSection();
+        tracer.record('E', task.mTraceName, task.mTraceId, "running");
+    }
+
+    /**
+     * 処理結果が確定した
+     *
+     * @param error 失敗した場合はその例外
+     */
+    static void onTaskResult(BackgroundTask<?> task, Exception error) {
+        TaskTracer tracer = sInstance;
+        if (tracer == null || task.mTraceId == 0) {
+            return;
+        }
+        tracer.record('n', task.mTraceName, task.mTraceId, error != null ? "error:" + error.getClass().getSimpleName() : "result");
+    }
+
+    /**
+     * コールバックがライフサイクル待ちで保留された
+     */
+    static void onCallbackPending(BackgroundTask<?> task) {
+        TaskTracer tracer = sInstance;
+        if (tracer == null || task.mTraceId == 0) {
+            return;
+        }
+        tracer.record('n', task.mTraceName, task.mTraceId, "callback pending");
+    }
+
+    /**
+     * コールバックの実行を開始した
+     */
+    static void onCallbackBegin(BackgroundTask<?> task) {
+        TaskTracer tracer = sInstance;
+        if (tracer == null || task.mTraceId == 0) {
+            return;
+        }
+        tracer.record('B', task.mTraceName, task.mTraceId, "callback");
+        tracer.beginSection(task.mTraceName + "/callback");
+    }
+
+    /**
+     * コールバックの実行を終了した
+     */
+    static void onCallbackEnd(BackgroundTask<?> task) {
+        TaskTracer tracer = sInstance;
+        if (tracer == null || task.mTraceId == 0) {
+            return;
+        }
+        tracer.endSection();
+        tracer.record('E', task.mTraceName, task.mTraceId, "callback");
+        tracer.record('e', task.mTraceName, task.mTraceId, "delivered");
+    }
+
+    /**
+     * コールバックが実行されずに破棄された
+     */
+    static void onCallbackDropped(BackgroundTask<?> task) {
+        TaskTracer tracer = sInstance;
+        if (tracer == null || task.mTraceId == 0) {
+            return;
+        }
+        tracer.record('e', task.mTraceName, task.mTraceId, "dropped");
+    }
+
+    private void record(char phase, String name, long id, String step) {
+        Thread thread = Thread.currentThread();
+        Event event = new Event(phase, name, id, step, System.nanoTime() / 1000, thread.getId(), thread.getName());
+        long index = mEventIndex.getAndIncrement();
+        mEvents.set((int) (index % mEvents.length()), event);
+    }
+
+    private void beginSection(String name) {
+        if (!mSystemTrace) {
+            return;
+        }
+        if (name.length() > MAX_SECTION_NAME_LENGTH) {
+            name = name.substring(0, MAX_SECTION_NAME_LENGTH);
+        }
+        Trace.beginSection(name);
+    }
+
+    private void endSection() {
+        if (!mSystemTrace) {
+            return;
+        }
+        Trace.endSection();
+    }
+
+    private void write(Writer writer) throws IOException {
+        long end = mEventIndex.get();
+        long begin = Math.max(0, end - mEvents.length());
+        int pid = Process.myPid();
+        long mainThreadId = Looper.getMainLooper().getThread().getId();
+
+        Map<Long, String> threadNames = new HashMap<>();
+        boolean first = true;
+        for (long i = begin; i < end; ++i) {
+            Event event = mEvents.get((int) (i % mEvents.length()));
+            if (event == null) {
+                continue;
+            }
+            threadNames.put(event.mThreadId, event.mThreadName);
+
+            if (!first) {
+                writer.write(",");
+            }
+            first = false;
+            event.write(writer, pid);
+        }
+
+        // スレッド名はスレッドの再利用で変わるため、最後に記録された名前を使う
+        for (Map.Entry<Long, String> entry : threadNames.entrySet()) {
+            if (!first) {
+                writer.write(",");
+            }
+            first = false;
+            String name = (entry.getKey() == mainThreadId) ? "main" : entry.getValue();
+            writer.write("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":" + pid + ",\"tid\":" + entry.getKey() +
+                    ",\"args\":{\"name\":" + quote(name) + "}}");
+        }
+    }
+
+    static String quote(String value) {
+        StringBuilder result = new StringBuilder(value.length() + 2);
+        result.append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        result.append('"');
+        return result.toString();
+    }
+
+    /**
+     * 記録されたイベント
+     */
+    static class Event {
+        final char mPhase;
+
+        final String mName;
+
+        final long mId;
+
+        final String mStep;
+
+        final long mTimestampUs;
+
+        final long mThreadId;
+
+        final String mThreadName;
+
+        Event(char phase, String name, long id, String step, long timestampUs, long threadId, String threadName) {
+            mPhase = phase;
+            mName = name;
+            mId = id;
+            mStep = step;
+            mTimestampUs = timestampUs;
+            mThreadId = threadId;
+            mThreadName = threadName;
+        }
+
+        void write(Writer writer, int pid) throws IOException {
+            StringBuilder json = new StringBuilder(128);
+            json.append("{\"ph\":\"").append(mPhase).append('"');
+            json.append(",\"cat\":\"cerberus\"");
+            if (mPhase == 'B' || mPhase == 'E') {
+                // 実行スレッド上のイベント
+                json.append(",\"name\":").append(quote(mName + " " + mStep));
+            } else {
+                // タスク全体の非同期イベント
+                json.append(",\"name\":").append(quote(mName));
+                json.append(",\"id\":").append(mId);
+                json.append(",\"args\":{\"step\":").append(quote(mStep)).append('}');
+            }
+            json.append(",\"ts\":").append(mTimestampUs);
+            json.append(",\"pid\":").append(pid);
+            json.append(",\"tid\":").append(mThreadId);
+            json.append('}');
+            writer.write(json.toString());
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.eaglesakura.cerberus;
+
+import com.eaglesakura.cerberus.error.TaskTimeoutException;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 処理が終わらないタスクを検出する
+ *
+ * ExecuteTargetごとに実行中のタスクを管理し、閾値を超えて実行されているタスクを実行スレッドのスタックトレースと共に通知する。
+ * 強制終了が指定されている場合、タスクは {@link TaskTimeoutException} で失敗し、実行スレッドへ割り込みがかけられる。
+ * 割り込みに応答せずにスレッドを占有し続ける場合、そのスレッドが解放されるまでプールのスレッド数を1つ増やして処理能力を維持する。
+ * ただし直列化されたExecuteTargetは順序を保つためスレッドを増やさず、スレッドが解放されるまで後続のタスクは待たされる。
+ */
+public class TaskWatchdog {
+
+    /**
+     * ExecuteTargetごとの閾値
+     * <p>
+     * 0の場合は監視しない。
+     */
+    static final long[] sThresholdMs = new long[ExecuteTarget.values().length];
+
+    /**
+     * ExecuteTargetごとの強制終了の有無
+     */
+    static final boolean[] sAbort = new boolean[ExecuteTarget.values().length];
+
+    private static volatile TaskWatchdog sInstance;
+
+    /**
+     * スタックトレースを取得するスレッド
+     *
+     * 取得には対象スレッドの停止を伴うため、タイマースレッドを止めないように別スレッドで行う。
+     */
+    private static final Executor sStackCapturer = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "Cerberus/Watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Listener mListener;
+
+    /**
+     * ExecuteTargetごとの実行中のタスク
+     */
+    private final List<Set<BackgroundTask<?>>> mRunningTasks = new ArrayList<>();
+
+    private TaskWatchdog(Listener listener) {
+        mListener = listener;
+        for (int i = 0; i < ExecuteTarget.values().length; ++i) {
+            mRunningTasks.add(Collections.newSetFromMap(new ConcurrentHashMap<BackgroundTask<?>, Boolean>()));
+        }
+    }
+
+    /**
+     * 監視を開始する
+     *
+     * @param listener 閾値を超えたタスクの通知先
+     */
+    public static void enable(@NonNull Listener listener) {
+        sInstance = new TaskWatchdog(listener);
+    }
+
+    /**
+     * 監視を終了する
+     */
+    public static void disable() {
+        sInstance = null;
+    }
+
+    public static boolean isEnabled() {
+        return sInstance != null;
+    }
+
+    /**
+     * 閾値を指定する。
+     * <p>
+     * デフォルトでは全てのExecuteTargetで監視しない。
+     *
+     * @param thresholdMs 実行時間の閾値、0の場合は監視しない
+     * @param abort       閾値を超えたタスクを強制終了させる場合true
+     */
+    public static void setThreshold(@NonNull ExecuteTarget target, long thresholdMs, boolean abort) {
+        sThresholdMs[target.ordinal()] = Math.max(0, thresholdMs);
+        sAbort[target.ordinal()] = abort;
+    }
+
+    /**
+     * 実行中のタスク数を取得する
+     */
+    public static int getRunningTaskCount(@NonNull ExecuteTarget target) {
+        TaskWatchdog watchdog = sInstance;
+        if (watchdog == null) {
+            return 0;
+        }
+        return watchdog.mRunningTasks.get(target.ordinal()).size();
+    }
+
+    /**
+     * 非同期処理が開始された
+     */
+    static void onTaskRunning(BackgroundTask<?> task, ExecuteTarget target) {
+        TaskWatchdog watchdog = sInstance;
+        if (watchdog == null) {
+            return;
+        }
+
+        synchronized (task) {
+            task.mWatchdogState = BackgroundTask.WATCHDOG_RUNNING;
+        }
+        watchdog.mRunningTasks.get(target.ordinal()).add(task);
+
+        long thresholdMs = sThresholdMs[target.ordinal()];
+        if (thresholdMs > 0) {
+            final long START_TIME = System.nanoTime();
+            task.mWatchdogTimer = TaskTimer.getInstance().schedule(() -> watchdog.onExpired(task, target, START_TIME), thresholdMs);
+        }
+    }
+
+    /**
+     * 非同期処理が終了した
+     */
+    static void onTaskFinished(BackgroundTask<?> task, ExecuteTarget target) {
+        TaskTimer.Timeout timer = task.mWatchdogTimer;
+        if (timer != null) {
+            timer.cancel();
+            task.mWatchdogTimer = null;
+        }
+
+        boolean stuck;
+        synchronized (task) {
+            stuck = (task.mWatchdogState == BackgroundTask.WATCHDOG_STUCK);
+            task.mWatchdogState = BackgroundTask.WATCHDOG_FINISHED;
+        }
+        if (stuck) {
+            // 占有されていたスレッドが戻ったので、増やした分を戻す
+            task.mCallbackQueue.getThreadController().onWorkerStuck(target, -1);
+        }
+
+        TaskWatchdog watchdog = sInstance;
+        if (watchdog != null) {
+            watchdog.mRunningTasks.get(target.ordinal()).remove(task);
+        }
+    }
+
+    /**
+     * 閾値を超えた
+     *
+     * タイマースレッドから呼び出される。
+     */
+    private void onExpired(BackgroundTask<?> task, ExecuteTarget target, long startTime) {
+        Thread worker;
+        synchronized (task) {
+            worker = task.mWorkerThread;
+        }
+        if (worker == null) {
+            return;
+        }
+
+        final long RUNNING_NS = System.nanoTime() - startTime;
+        final String THREAD_NAME = worker.getName();
+        sStackCapturer.execute(() -> {
+            final StackTraceElement[] STACK_TRACE = worker.getStackTrace();
+            PendingCallbackQueue.sHandler.post(() -> {
+                boolean aborted = sAbort[target.ordinal()] && abort(task, target, RUNNING_NS);
+                mListener.onStuckTask(new StuckTask(target, RUNNING_NS, THREAD_NAME, STACK_TRACE, task.mOrigin, aborted));
+            });
+        });
+    }
+
+    /**
+     * タスクを強制終了させる
+     *
+     * UIThreadから呼び出される。
+     * 通知までの間に非同期処理が終了していた場合は、その結果を優先して何もしない。
+     *
+     * @return 強制終了させた場合true
+     */
+    private boolean abort(BackgroundTask<?> task, ExecuteTarget target, long runningNs) {
+        if (!task.abort(new TaskTimeoutException("Task stuck : " + target + " " + TimeUnit.NANOSECONDS.toMillis(runningNs) + "ms"), true)) {
+            return false;
+        }
+        if (target.isSerial()) {
+            // 直列化されたExecuteTargetは、スレッドを増やすと順序が崩れるため解放を待つ
+            return true;
+        }
+
+        boolean stuck = false;
+        synchronized (task) {
+            if (task.mWatchdogState == BackgroundTask.WATCHDOG_RUNNING) {
+                task.mWatchdogState = BackgroundTask.WATCHDOG_STUCK;
+                stuck = true;
+            }
+        }
+        if (stuck) {
+            // スレッドが解放されるまで、プールのスレッドを増やしておく
+            task.mCallbackQueue.getThreadController().onWorkerStuck(target, 1);
+        }
+        return true;
+    }
+
+    /**
+     * 閾値を超えたタスク
+     */
+    public static class StuckTask {
+        private final ExecuteTarget mTarget;
+
+        private final long mRunningNs;
+
+        private final String mThreadName;
+
+        private final StackTraceElement[] mStackTrace;
+
+        private final Throwable mOrigin;
+
+        private final boolean mAborted;
+
+        StuckTask(ExecuteTarget target, long runningNs, String threadName, StackTraceElement[] stackTrace, Throwable origin, boolean aborted) {
+            mTarget = target;
+            mRunningNs = runningNs;
+            mThreadName = threadName;
+            mStackTrace = stackTrace;
+            mOrigin = origin;
+            mAborted = aborted;
+        }
+
+        public ExecuteTarget getTarget() {
+            return mTarget;
+        }
+
+        /**
+         * 検出時点での実行時間
+         */
+        public long getRunningMs() {
+            return TimeUnit.NANOSECONDS.toMillis(mRunningNs);
+        }
+
+        public String getThreadName() {
+            return mThreadName;
+        }
+
+        /**
+         * 検出時点での実行スレッドのスタックトレース
+         */
+        @NonNull
+        public StackTraceElement[] getStackTrace() {
+            return mStackTrace;
+        }
+
+        /**
+         * タスクを生成した時点のスタックトレース
+         *
+         * {@link SlowCallbackMonitor} で記録されていない場合はnull
+         */
+        @Nullable
+        public Throwable getOrigin() {
+            return mOrigin;
+        }
+
+        /**
+         * 強制終了させた場合true
+         */
+        public boolean isAborted() {
+            return mAborted;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append("StuckTask{").append(mTarget).append(" ").append(getRunningMs()).append("ms ").append(mThreadName);
+            if (mAborted) {
+                result.append(" aborted");
+            }
+            result.append("}");
+            for (StackTraceElement element : mStackTrace) {
+                result.append("\n\tat ").append(element);
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * 閾値を超えたタスクの通知先
+     *
+     * UIThreadから呼び出される。
+     */
+    public interface Listener {
+        void onStuckTask(@NonNull StuckTask task);
+    }
+}
@@ -1,10 +1,21 @@
 package com.eaglesakura.cerberus;
 
+import com.eaglesakura.cerberus.error.TaskRejectedException;
+
+import android.os.Looper;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import io.reactivex.Scheduler;
 import io.reactivex.android.schedulers.AndroidSchedulers;
@@ -17,6 +28,22 @@ class ThreadControllerImpl {
 
     List<ThreadItem> mThreads = new ArrayList<>();
 
+    /**
+     * プロセス内の全てのスレッド管理
+     *
+     * ローカルのスレッド管理はPendingCallbackQueueと共に廃棄されるため、弱参照で保持する。
+     */
+    private static final Map<ThreadItem, Boolean> sAllThreads = Collections.synchronizedMap(new WeakHashMap<ThreadItem, Boolean>());
+
+    /**
+     * ExecuteTargetごとの、キューの上限によって受け付けられなかったタスク数
+     */
+    static final AtomicLongArray sRejectedTasks = new AtomicLongArray(ExecuteTarget.values().length);
+
+    /**
+     * ExecuteTargetごとの、キューの上限によって破棄されたタスク数
+     */
+    static final AtomicLongArray sShedTasks = new AtomicLongArray(ExecuteTarget.values().length);
 
     /**
      * プロセス共有シリアル
@@ -33,6 +60,20 @@ class ThreadControllerImpl {
      */
     private static final ThreadItem sNetworks = new ThreadItem(ExecuteTarget.Network);
 
+    /**
+     * プロセス共有の専用スレッド
+     */
+    private static final ThreadItem sNewThreads = new ThreadItem(ExecuteTarget.NewThread);
+
+    /**
+     * プロセス共有アイドル処理
+     */
+    private static final ThreadItem sIdles = new ThreadItem(ExecuteTarget.Idle);
+
+    private static final IdleDispatcher sIdleDispatcher = new IdleDispatcher(sIdles);
+
+    private static final Scheduler sIdleScheduler = Schedulers.from(sIdleDispatcher);
+
     public ThreadControllerImpl() {
         mThreads.add(new ThreadItem(ExecuteTarget.LocalQueue));
         mThreads.add(new ThreadItem(ExecuteTarget.LocalParallel));
@@ -44,15 +85,275 @@ class ThreadControllerImpl {
     /**
      * 処理対象のスケジューラを取得する
      *
+     * スレッドプールで処理される場合、タスクは実行待ちキューで管理される。
+     *
      * MEMO : スケジューラの実際のnew処理はこの呼出まで遅延される
      */
-    Scheduler getScheduler(ExecuteTarget target) {
-        if (target == ExecuteTarget.NewThread) {
-            return Schedulers.newThread();
-        } else if (target == ExecuteTarget.MainThread) {
+    Scheduler getScheduler(ExecuteTarget target, BackgroundTask task) {
+        if (target == ExecuteTarget.MainThread) {
             return AndroidSchedulers.mainThread();
+        } else if (target == ExecuteTarget.Idle) {
+            return sIdleScheduler;
         } else {
-            return mThreads.get(target.ordinal()).getScheduler();
+            return getThreadItem(target).getScheduler(task);
+        }
+    }
+
+    /**
+     * 実行待ちキューの上限を確認し、タスクを受け付けるかを判断する
+     *
+     * 上限に達している場合、ポリシーに従って実行待ちのタスクが破棄される。
+     * UIThreadから呼び出される。
+     *
+     * @return タスクを受け付けない場合、その理由
+     */
+    TaskRejectedException admit(ExecuteTarget target, BackgroundTask task) {
+        ThreadItem item = getThreadItem(target);
+        if (item == null) {
+            return null;
+        }
+        return item.admit(task);
+    }
+
+    /**
+     * タスクの補助処理を実行待ちキューへ積む
+     *
+     * 補助処理はタスクと同じ所有者の処理として公平に取り出される。
+     * キューが上限に達している場合は積まれない。
+     *
+     * @return キューに積んだ場合true
+     */
+    boolean enqueueHelper(ExecuteTarget target, BackgroundTask task, Runnable command) {
+        ThreadItem item = getThreadItem(target);
+        if (item == null) {
+            throw new IllegalArgumentException("Queue not found : " + target);
+        }
+        return item.enqueueHelper(task, command);
+    }
+
+    /**
+     * 実行待ちキューの枠を確保する
+     *
+     * キューの上限が {@link QueuePolicy#Block} の場合のみ有効で、空きが無ければ空くまで呼び出し元を待たせる。
+     * UIThreadからは待たず、枠の確保は {@link #acquireQueueSlot(ExecuteTarget, BackgroundTask, Runnable)} まで持ち越される。
+     */
+    void reserveQueueSlot(ExecuteTarget target, BackgroundTask task) {
+        ThreadItem item = getThreadItem(target);
+        if (item == null) {
+            return;
+        }
+        item.reserveSlot(task, !Thread.currentThread().equals(Looper.getMainLooper().getThread()));
+    }
+
+    /**
+     * 実行待ちキューの枠を確保する
+     *
+     * 空きが無い場合はfalseを返し、空きができた時点でretryがUIThreadで呼び出される。
+     * UIThreadから呼び出される。
+     *
+     * @return 枠を確保できた場合true
+     */
+    boolean acquireQueueSlot(ExecuteTarget target, BackgroundTask task, Runnable retry) {
+        ThreadItem item = getThreadItem(target);
+        if (item == null) {
+            return true;
+        }
+        return item.acquireSlot(task, retry);
+    }
+
+    /**
+     * キューへ積まれずに終了したタスクの枠を解放する
+     */
+    void releaseQueueSlot(ExecuteTarget target, BackgroundTask task) {
+        ThreadItem item = getThreadItem(target);
+        if (item != null) {
+            item.releaseSlot(task);
+        }
+    }
+
+    private ThreadItem getThreadItem(ExecuteTarget target) {
+        if (target == ExecuteTarget.NewThread) {
+            return sNewThreads;
+        } else if (target.ordinal() >= mThreads.size()) {
+            return null;
+        }
+        return mThreads.get(target.ordinal());
+    }
+
+    /**
+     * スレッドを事前に生成しておく
+     *
+     * @param threads 生成するスレッド数、最大スレッド数を超える分は無視される
+     */
+    void prestart(ExecuteTarget target, int threads) {
+        if (target == ExecuteTarget.MainThread) {
+            return;
+        } else if (target == ExecuteTarget.Idle) {
+            sIdles.prestart(threads);
+            return;
+        }
+        getThreadItem(target).prestart(threads);
+    }
+
+    /**
+     * プロセス共有のスレッドを事前に生成しておく
+     *
+     * @param threads 生成するスレッド数、最大スレッド数を超える分は無視される
+     */
+    static void prestartShared(ExecuteTarget target, int threads) {
+        ThreadItem item;
+        switch (target) {
+            case GlobalQueue:
+                item = sGlobalPipeline;
+                break;
+            case GlobalParallel:
+                item = sGlobalParallels;
+                break;
+            case Network:
+                item = sNetworks;
+                break;
+            case NewThread:
+                item = sNewThreads;
+                break;
+            case Idle:
+                item = sIdles;
+                break;
+            default:
+                throw new IllegalArgumentException("Not shared target : " + target);
+        }
+        item.prestart(threads);
+    }
+
+    /**
+     * 処理対象のExecutorを取得する
+     *
+     * MainThreadはExecutorを持たないため指定できない。
+     */
+    Executor getExecutor(ExecuteTarget target) {
+        if (target == ExecuteTarget.MainThread) {
+            throw new IllegalArgumentException("Executor not found : " + target);
+        } else if (target == ExecuteTarget.Idle) {
+            return sIdleDispatcher;
+        }
+        return getThreadItem(target).getExecutor();
+    }
+
+    /**
+     * 非同期処理の開始時点の同時実行数を取得する
+     *
+     * 同時実行数の自動調整を行わないExecuteTargetでは0となる。
+     */
+    int getInFlight(ExecuteTarget target) {
+        if (target.getConcurrencyLimit() == null) {
+            return 0;
+        }
+        return mThreads.get(target.ordinal()).getActiveThreads();
+    }
+
+    /**
+     * タスクの処理結果を通知する
+     *
+     * @param latencyNs 非同期処理の実行時間
+     * @param inFlight  {@link #getInFlight(ExecuteTarget)} で取得した、開始時点の同時実行数
+     * @param failed    非同期処理が失敗した場合true
+     */
+    void onTaskFinished(ExecuteTarget target, long latencyNs, int inFlight, boolean failed) {
+        if (target.getConcurrencyLimit() == null) {
+            return;
+        }
+        mThreads.get(target.ordinal()).onTaskFinished(latencyNs, inFlight, failed);
+    }
+
+    /**
+     * 強制終了したタスクがスレッドを占有している
+     *
+     * 占有が続く間、プールのスレッド数を増やして処理能力を維持する。
+     *
+     * @param delta 占有し始めた場合は1、解放された場合は-1
+     */
+    void onWorkerStuck(ExecuteTarget target, int delta) {
+        ThreadItem item = (target == ExecuteTarget.Idle) ? sIdles : getThreadItem(target);
+        if (item != null) {
+            item.addExtraThreads(delta);
+        }
+    }
+
+    /**
+     * 指定以外のスレッドで、実行中・実行待ちのタスクがあればtrue
+     */
+    static boolean isBusy(ThreadItem ignore) {
+        synchronized (sAllThreads) {
+            for (ThreadItem item : sAllThreads.keySet()) {
+                if (item != ignore && item.isBusy()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 実行待ちのタスク数を取得する
+     *
+     * ローカルのExecuteTargetは、全てのPendingCallbackQueueの合計となる。
+     */
+    static int getQueueDepth(ExecuteTarget target) {
+        int result = 0;
+        for (ThreadItem item : getAllThreadItems(target)) {
+            result += item.getQueueDepth();
+        }
+        if (target == ExecuteTarget.Idle) {
+            result += sIdleDispatcher.getPendingCount();
+        }
+        return result;
+    }
+
+    /**
+     * 処理中のスレッド数を取得する
+     */
+    static int getActiveThreads(ExecuteTarget target) {
+        int result = 0;
+        for (ThreadItem item : getAllThreadItems(target)) {
+            result += item.getActiveThreads();
+        }
+        return result;
+    }
+
+    /**
+     * 生存しているスレッド数を取得する
+     */
+    static int getPoolSize(ExecuteTarget target) {
+        int result = 0;
+        for (ThreadItem item : getAllThreadItems(target)) {
+            result += item.getPoolSize();
+        }
+        return result;
+    }
+
+    private static List<ThreadItem> getAllThreadItems(ExecuteTarget target) {
+        List<ThreadItem> result = new ArrayList<>();
+        synchronized (sAllThreads) {
+            for (ThreadItem item : sAllThreads.keySet()) {
+                if (item.mTarget == target) {
+                    result.add(item);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * スレッドが終了した
+     *
+     * スレッド数の上限によってスレッドを持てなかったプールがあれば、スレッドを生成させる。
+     */
+    static void onThreadReleased() {
+        List<ThreadItem> items;
+        synchronized (sAllThreads) {
+            items = new ArrayList<>(sAllThreads.keySet());
+        }
+        for (ThreadItem item : items) {
+            item.startStarvedThread();
         }
     }
 
@@ -70,32 +371,451 @@ class ThreadControllerImpl {
         Scheduler mScheduler;
         ExecuteTarget mTarget;
 
+        /**
+         * 強制終了したタスクに占有されているスレッド数
+         */
+        int mExtraThreads;
+
         public ThreadItem(ExecuteTarget target) {
             this.mTarget = target;
+            sAllThreads.put(this, Boolean.TRUE);
+        }
+
+        /**
+         * 実行待ちのタスク
+         *
+         * 並列実行するExecuteTargetでは、PendingCallbackQueueごとに重み付きラウンドロビンで取り出される。
+         * 直列化されたExecuteTargetでは、積まれた順序を保つ。
+         */
+        private final FairTaskQueue<QueuedTask> mQueue = new FairTaskQueue<QueuedTask>() {
+            @Override
+            protected int getWeight(Object owner) {
+                if (owner instanceof PendingCallbackQueue) {
+                    return ((PendingCallbackQueue) owner).getSchedulingWeight();
+                }
+                return 1;
+            }
+        };
+
+        /**
+         * 実行待ちのタスクを1つ取り出して実行する
+         *
+         * スレッドプールにはタスクの数だけこの処理が投げられ、実行される順番はスレッドが空いた時点で決定される。
+         */
+        private final Runnable mDrain = this::drain;
+
+        /**
+         * 確保済みで、まだキューに積まれていない枠の数
+         *
+         * mQueueのロックで保護される。
+         */
+        private int mReservedSlots;
+
+        /**
+         * キューの空きを待っているタスクの投入処理
+         *
+         * mQueueのロックで保護される。
+         */
+        private final Queue<QueuedTask> mBlocked = new ArrayDeque<>();
+
+        /**
+         * 実行中・実行待ちのタスクがあればtrue
+         */
+        boolean isBusy() {
+            synchronized (mQueue) {
+                if (!mQueue.isEmpty()) {
+                    return true;
+                }
+            }
+
+            synchronized (ThreadControllerImpl.class) {
+                if (mExecutor == null) {
+                    return false;
+                }
+                return mExecutor.getActiveCount() > 0;
+            }
+        }
+
+        int getQueueDepth() {
+            synchronized (mQueue) {
+                return mQueue.size();
+            }
+        }
+
+        int getActiveThreads() {
+            synchronized (ThreadControllerImpl.class) {
+                return mExecutor != null ? mExecutor.getActiveCount() : 0;
+            }
+        }
+
+        int getPoolSize() {
+            synchronized (ThreadControllerImpl.class) {
+                return mExecutor != null ? mExecutor.getPoolSize() : 0;
+            }
+        }
+
+        /**
+         * タスク専用のスケジューラを取得する
+         */
+        Scheduler getScheduler(BackgroundTask task) {
+            return Schedulers.from(command -> enqueue(task, command));
+        }
+
+        private void enqueue(BackgroundTask task, Runnable command) {
+            synchronized (mQueue) {
+                if (task.mQueueSlotReserved) {
+                    // 確保していた枠は、キューに積まれたタスクとして数えられる
+                    task.mQueueSlotReserved = false;
+                    --mReservedSlots;
+                }
+                mQueue.add(getQueueOwner(task), new QueuedTask(task, command));
+            }
+            getExecutor().execute(mDrain);
+        }
+
+        /**
+         * タスクの補助処理を積む
+         *
+         * 補助処理は呼び出し元のタスクの一部であるため、キューに空きが無ければ他のタスクを破棄せずに諦める。
+         */
+        boolean enqueueHelper(BackgroundTask task, Runnable command) {
+            ExecuteTargetSettings.QueueLimit limit = ExecuteTargetSettings.getQueueLimit(mTarget);
+            synchronized (mQueue) {
+                if (limit != null && (!mBlocked.isEmpty() || mQueue.size() + mReservedSlots >= limit.mMaxQueuedTasks)) {
+                    return false;
+                }
+                mQueue.add(getQueueOwner(task), new QueuedTask(task, command, true));
+            }
+            getExecutor().execute(mDrain);
+            return true;
+        }
+
+        /**
+         * 実行待ちのタスクを振り分ける所有者を取得する
+         *
+         * 直列化されたExecuteTargetは全てのタスクを1つのサブキューへ積み、FIFOで処理する。
+         */
+        private Object getQueueOwner(BackgroundTask task) {
+            return mTarget.isSerial() ? this : task.mCallbackQueue;
+        }
+
+        private void drain() {
+            QueuedTask next;
+            List<QueuedTask> unblocked;
+            synchronized (mQueue) {
+                next = mQueue.poll();
+                unblocked = onCapacityAvailable();
+            }
+            dispatchUnblocked(unblocked);
+
+            if (next != null) {
+                next.mCommand.run();
+            }
+        }
+
+        /**
+         * キューの空きを、空き待ちのタスクへ順に割り当てる
+         *
+         * mQueueのロック中に呼び出す。
+         *
+         * @return 枠を割り当てたタスク
+         */
+        private List<QueuedTask> onCapacityAvailable() {
+            mQueue.notifyAll();
+            if (mBlocked.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            ExecuteTargetSettings.QueueLimit limit = ExecuteTargetSettings.getQueueLimit(mTarget);
+            boolean blocking = (limit != null && limit.mPolicy == QueuePolicy.Block);
+            List<QueuedTask> result = new ArrayList<>();
+            while (!mBlocked.isEmpty() && (!blocking || mQueue.size() + mReservedSlots < limit.mMaxQueuedTasks)) {
+                QueuedTask next = mBlocked.poll();
+                if (blocking) {
+                    next.mTask.mQueueSlotReserved = true;
+                    ++mReservedSlots;
+                }
+                result.add(next);
+            }
+            return result;
+        }
+
+        /**
+         * 枠を割り当てたタスクの投入をUIThreadで再開させる
+         */
+        private void dispatchUnblocked(List<QueuedTask> unblocked) {
+            for (QueuedTask task : unblocked) {
+                PendingCallbackQueue.sHandler.post(task.mCommand);
+            }
+        }
+
+        /**
+         * 実行待ちキューに空きがあればtrue
+         *
+         * 空き待ちのタスクがある場合、それらを追い越さないようにfalseとなる。
+         * mQueueのロック中に呼び出す。
+         */
+        private boolean hasCapacity(ExecuteTargetSettings.QueueLimit limit) {
+            return mBlocked.isEmpty() && mQueue.size() + mReservedSlots < limit.mMaxQueuedTasks;
+        }
+
+        /**
+         * 実行待ちキューの枠を確保する
+         *
+         * @param wait 空きが無い場合に空くまで待つならtrue
+         * @return 枠を確保した、もしくは枠が不要な場合true
+         */
+        boolean reserveSlot(BackgroundTask task, boolean wait) {
+            ExecuteTargetSettings.QueueLimit limit = ExecuteTargetSettings.getQueueLimit(mTarget);
+            if (limit == null || limit.mPolicy != QueuePolicy.Block) {
+                return true;
+            }
+
+            synchronized (mQueue) {
+                if (task.mQueueSlotReserved) {
+                    return true;
+                }
+
+                while (!hasCapacity(limit)) {
+                    if (!wait) {
+                        return false;
+                    }
+
+                    try {
+                        mQueue.wait();
+                    } catch (InterruptedException e) {
+                        // 枠の確保はUIThreadでの投入時に持ち越す
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+
+                task.mQueueSlotReserved = true;
+                ++mReservedSlots;
+                return true;
+            }
+        }
+
+        /**
+         * 実行待ちキューの枠を確保する
+         *
+         * 空きが無い場合は空き待ちとして登録し、枠を割り当てた時点でretryをUIThreadで呼び出す。
+         *
+         * @return 枠を確保した、もしくは枠が不要な場合true
+         */
+        boolean acquireSlot(BackgroundTask task, Runnable retry) {
+            ExecuteTargetSettings.QueueLimit limit = ExecuteTargetSettings.getQueueLimit(mTarget);
+            if (limit == null || limit.mPolicy != QueuePolicy.Block) {
+                return true;
+            }
+
+            synchronized (mQueue) {
+                if (task.mQueueSlotReserved) {
+                    return true;
+                } else if (hasCapacity(limit)) {
+                    task.mQueueSlotReserved = true;
+                    ++mReservedSlots;
+                    return true;
+                }
+
+                mBlocked.add(new QueuedTask(task, retry));
+                return false;
+            }
+        }
+
+        /**
+         * キューへ積まれずに終了したタスクの枠を解放する
+         */
+        void releaseSlot(BackgroundTask task) {
+            List<QueuedTask> unblocked;
+            synchronized (mQueue) {
+                if (!task.mQueueSlotReserved) {
+                    return;
+                }
+                task.mQueueSlotReserved = false;
+                --mReservedSlots;
+                unblocked = onCapacityAvailable();
+            }
+            dispatchUnblocked(unblocked);
+        }
+
+        /**
+         * 実行待ちキューの上限を確認する
+         *
+         * @return タスクを受け付けない場合、その理由
+         */
+        TaskRejectedException admit(BackgroundTask task) {
+            ExecuteTargetSettings.QueueLimit limit = ExecuteTargetSettings.getQueueLimit(mTarget);
+            if (limit == null || limit.mPolicy == QueuePolicy.Block) {
+                // Blockは枠の確保によって制御される
+                return null;
+            }
+
+            QueuedTask victim = null;
+            synchronized (mQueue) {
+                if (mQueue.size() < limit.mMaxQueuedTasks) {
+                    return null;
+                }
+
+                if (limit.mPolicy == QueuePolicy.ShedOldest) {
+                    victim = mQueue.peekOldest();
+                } else if (limit.mPolicy == QueuePolicy.ShedLowestPriority) {
+                    // 同じ優先度であれば、最も古いタスクを破棄する
+                    for (QueuedTask queued : mQueue.items()) {
+                        if (victim == null || queued.mTask.mPriority < victim.mTask.mPriority) {
+                            victim = queued;
+                        }
+                    }
+
+                    if (victim != null && task.mPriority < victim.mTask.mPriority) {
+                        // 新しいタスクが最も優先度が低いため、受け付けない
+                        sRejectedTasks.incrementAndGet(mTarget.ordinal());
+                        return new TaskRejectedException("Queue is full : " + mTarget);
+                    }
+                }
+
+                if (victim == null) {
+                    sRejectedTasks.incrementAndGet(mTarget.ordinal());
+                    return new TaskRejectedException("Queue is full : " + mTarget);
+                }
+                mQueue.remove(victim);
+            }
+
+            if (victim.mHelper) {
+                // 補助処理は呼び出し元のタスクが引き継ぐため、タスク自体は破棄しない
+                return null;
+            }
+
+            sShedTasks.incrementAndGet(mTarget.ordinal());
+            victim.mTask.abort(new TaskRejectedException("Task shed : " + mTarget));
+            return null;
         }
 
         public Scheduler getScheduler() {
             synchronized (ThreadControllerImpl.class) {
                 if (mScheduler == null) {
-                    mExecutor = new ThreadPoolExecutor(0, mTarget.getThreadPoolNum(), mTarget.getKeepAliveMs(), TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()) {
+                    mExecutor = new ThreadPoolExecutor(0, Math.max(1, mTarget.getThreadPoolNum()), ExecuteTargetSettings.getKeepAliveMs(mTarget), TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), new TaskThreadFactory(mTarget)) {
                         @Override
                         public void execute(Runnable command) {
                             try {
-                                setCorePoolSize(mTarget.getThreadPoolNum());
+                                setCorePoolSize(resizePool());
                                 super.execute(command);
                             } finally {
-                                setCorePoolSize(0);
+                                setCorePoolSize(getWarmPoolSize());
                             }
                         }
                     };
                     mScheduler = Schedulers.from(mExecutor);
                 } else {
-                    mExecutor.setCorePoolSize(mTarget.getThreadPoolNum());
+                    mExecutor.setCorePoolSize(resizePool());
                 }
                 return mScheduler;
             }
         }
 
+        /**
+         * 実行待ちのタスクがあるにも関わらずスレッドが無い場合、スレッドを生成する
+         */
+        void startStarvedThread() {
+            synchronized (ThreadControllerImpl.class) {
+                if (mExecutor == null || mExecutor.getPoolSize() > 0 || mExecutor.getQueue().isEmpty()) {
+                    return;
+                }
+
+                try {
+                    mExecutor.setCorePoolSize(resizePool());
+                    mExecutor.prestartCoreThread();
+                } finally {
+                    mExecutor.setCorePoolSize(getWarmPoolSize());
+                }
+            }
+        }
+
+        /**
+         * スレッドを事前に生成しておく
+         *
+         * 生成したスレッドは、常駐させるスレッド数を超える分はキャッシュ時間が過ぎると破棄される。
+         */
+        void prestart(int threads) {
+            synchronized (ThreadControllerImpl.class) {
+                getScheduler();
+                try {
+                    mExecutor.setCorePoolSize(Math.min(Math.max(0, threads), resizePool()));
+                    mExecutor.prestartAllCoreThreads();
+                } finally {
+                    mExecutor.setCorePoolSize(getWarmPoolSize());
+                }
+            }
+        }
+
+        /**
+         * 常駐させるスレッド数を取得する
+         */
+        int getWarmPoolSize() {
+            return Math.min(ExecuteTargetSettings.getMinWarmThreads(mTarget), resizePool());
+        }
+
+        /**
+         * 最大スレッド数・キャッシュ時間を現在の設定に合わせる
+         *
+         * @return 最大スレッド数
+         */
+        int resizePool() {
+            synchronized (ThreadControllerImpl.class) {
+                int size = Math.max(1, mTarget.getThreadPoolNum()) + mExtraThreads;
+                if (mExecutor != null && mExecutor.getMaximumPoolSize() != size) {
+                    if (mExecutor.getCorePoolSize() > size) {
+                        mExecutor.setCorePoolSize(size);
+                    }
+                    mExecutor.setMaximumPoolSize(size);
+                }
+                if (mExecutor != null) {
+                    long keepAliveMs = ExecuteTargetSettings.getKeepAliveMs(mTarget);
+                    if (mExecutor.getKeepAliveTime(TimeUnit.MILLISECONDS) != keepAliveMs) {
+                        mExecutor.setKeepAliveTime(keepAliveMs, TimeUnit.MILLISECONDS);
+                    }
+                }
+                return size;
+            }
+        }
+
+        void addExtraThreads(int delta) {
+            synchronized (ThreadControllerImpl.class) {
+                mExtraThreads = Math.max(0, mExtraThreads + delta);
+                int size = resizePool();
+                if (delta > 0 && mExecutor != null && !mExecutor.getQueue().isEmpty()) {
+                    // 実行待ちのタスクがあれば、増やした分のスレッドで処理させる
+                    try {
+                        mExecutor.setCorePoolSize(size);
+                        mExecutor.prestartCoreThread();
+                    } finally {
+                        mExecutor.setCorePoolSize(getWarmPoolSize());
+                    }
+                }
+            }
+        }
+
+        /**
+         * タスクの処理結果を同時実行数の自動調整へ反映する
+         */
+        void onTaskFinished(long latencyNs, int inFlight, boolean failed) {
+            AdaptiveConcurrencyLimit limit = mTarget.getConcurrencyLimit();
+            if (limit == null) {
+                return;
+            }
+
+            if (limit.onSample(latencyNs, inFlight, failed)) {
+                resizePool();
+            }
+        }
+
+        public Executor getExecutor() {
+            synchronized (ThreadControllerImpl.class) {
+                getScheduler();
+                return mExecutor;
+            }
+        }
+
         public void dispose() {
             synchronized (ThreadControllerImpl.class) {
                 if (mExecutor != null) {
@@ -113,4 +833,25 @@ class ThreadControllerImpl {
             }
         }
     }
+
+    static class QueuedTask {
+        final BackgroundTask mTask;
+
+        final Runnable mCommand;
+
+        /**
+         * タスクの補助処理であればtrue
+         */
+        final boolean mHelper;
+
+        QueuedTask(BackgroundTask task, Runnable command) {
+            this(task, command, false);
+        }
+
+        QueuedTask(BackgroundTask task, Runnable command, boolean helper) {
+            mTask = task;
+            mCommand = command;
+            mHelper = helper;
+        }
+    }
 }
@@ -0,0 +1,67 @@
+package com.eaglesakura.cerberus;
+
+import android.os.Debug;
+
+import java.lang.reflect.Method;
+
+/**
+ * 現在のスレッドのCPU時間を取得する
+ *
+ * Androidでは {@link Debug#threadCpuTimeNanos()} 、JVMではThreadMXBeanをリフレクションで使用する。
+ * どちらも使用できない場合は常に-1を返す。
+ */
+class ThreadCpuClock {
+
+    private static final boolean sAndroid = "Dalvik".equals(System.getProperty("java.vm.name"));
+
+    /**
+     * JVMのThreadMXBean
+     */
+    private static Object sThreadMXBean;
+
+    private static Method sGetCurrentThreadCpuTime;
+
+    static {
+        if (!sAndroid) {
+            try {
+                Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+                Object bean = factory.getMethod("getThreadMXBean").invoke(null);
+                Class<?> beanClass = Class.forName("java.lang.management.ThreadMXBean");
+                if ((Boolean) beanClass.getMethod("isCurrentThreadCpuTimeSupported").invoke(bean)) {
+                    sGetCurrentThreadCpuTime = beanClass.getMethod("getCurrentThreadCpuTime");
+                    sThreadMXBean = bean;
+                }
+            } catch (Throwable e) {
+                // CPU時間は取得できない
+            }
+        }
+    }
+
+    private ThreadCpuClock() {
+    }
+
+    /**
+     * CPU時間を取得できる環境であればtrue
+     */
+    static boolean isSupported() {
+        return sAndroid || sThreadMXBean != null;
+    }
+
+    /**
+     * 現在のスレッドのCPU時間を取得する
+     *
+     * @return 取得できない場合は-1
+     */
+    static long currentThreadCpuTimeNs() {
+        try {
+            if (sAndroid) {
+                return Debug.threadCpuTimeNanos();
+            } else if (sThreadMXBean != null) {
+                return (Long) sGetCurrentThreadCpuTime.invoke(sThreadMXBean);
+            }
+        } catch (Throwable e) {
+            // CPU時間は取得できない
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,72 @@
+package com.eaglesakura.cerberus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * トークンバケットによる流量制限
+ *
+ * 実行権の予約を行い、実行可能になるまでの待ち時間を返す。呼び出し元のスレッドはブロックしない。
+ * トークンが足りない場合は前借りされるため、予約した順に実行可能となる。
+ * 予約したまま実行されなかった場合は、返却することで後続の待ち時間を短縮できる。
+ */
+class TokenBucket {
+
+    /**
+     * 1秒あたりに補充されるトークン数
+     */
+    final double mPermitsPerSecond;
+
+    /**
+     * 貯めておけるトークン数の上限
+     */
+    final double mBurst;
+
+    private double mTokens;
+
+    private long mLastRefillTime;
+
+    TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond <= 0");
+        }
+        mPermitsPerSecond = permitsPerSecond;
+        mBurst = Math.max(1, burst);
+        mTokens = mBurst;
+        mLastRefillTime = System.nanoTime();
+    }
+
+    /**
+     * 実行権を1つ予約する
+     *
+     * @return 実行可能になるまでの待ち時間
+     */
+    long reserve() {
+        return reserve(System.nanoTime());
+    }
+
+    /**
+     * 実行権を1つ予約する
+     *
+     * @param now 現在時刻(System.nanoTime())
+     * @return 実行可能になるまでの待ち時間
+     */
+    synchronized long reserve(long now) {
+        if (now > mLastRefillTime) {
+            mTokens = Math.min(mBurst, mTokens + (now - mLastRefillTime) * mPermitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            mLastRefillTime = now;
+        }
+
+        mTokens -= 1;
+        if (mTokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-mTokens * 1000 / mPermitsPerSecond);
+    }
+
+    /**
+     * 予約した実行権を1つ返却する
+     */
+    synchronized void refund() {
+        mTokens = Math.min(mBurst, mTokens + 1);
+    }
+}
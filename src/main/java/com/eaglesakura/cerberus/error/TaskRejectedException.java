@@ -0,0 +1,21 @@
+package com.eaglesakura.cerberus.error;
+
+/**
+ * 実行待ちキューが上限に達したため、タスクが受け付けられなかった
+ */
+public class TaskRejectedException extends TaskException {
+    public TaskRejectedException() {
+    }
+
+    public TaskRejectedException(String detailMessage) {
+        super(detailMessage);
+    }
+
+    public TaskRejectedException(String detailMessage, Throwable throwable) {
+        super(detailMessage, throwable);
+    }
+
+    public TaskRejectedException(Throwable throwable) {
+        super(throwable);
+    }
+}
@@ -0,0 +1,8 @@
+package com.eaglesakura.cerberus.lambda;
+
+/**
+ * 値を変換する
+ */
+public interface Function1<T, R> {
+    R apply(T it) throws Exception;
+}
@@ -0,0 +1,8 @@
+package com.eaglesakura.cerberus.lambda;
+
+/**
+ * 2つの値から結果を生成する
+ */
+public interface Function2<T1, T2, R> {
+    R apply(T1 it1, T2 it2) throws Exception;
+}
@@ -0,0 +1,107 @@
+package com.eaglesakura.cerberus;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    /**
+     * 同時処理数がcapacityを超えると処理時間が伸びる、擬似的なサーバー
+     */
+    static class SimulatedBackend {
+        final int mCapacity;
+
+        final long mLatencyNs = TimeUnit.MILLISECONDS.toNanos(100);
+
+        SimulatedBackend(int capacity) {
+            mCapacity = capacity;
+        }
+
+        long getLatencyNs(int inFlight) {
+            if (inFlight <= mCapacity) {
+                return mLatencyNs;
+            }
+            return mLatencyNs * inFlight / mCapacity;
+        }
+    }
+
+    /**
+     * 常に上限まで処理を詰め込み、1周期分のサンプルを反映する
+     */
+    static void simulate(AdaptiveConcurrencyLimit limit, SimulatedBackend backend, int rounds) {
+        for (int i = 0; i < rounds; ++i) {
+            int inFlight = limit.getLimit();
+            long latencyNs = backend.getLatencyNs(inFlight);
+            for (int k = 0; k < inFlight; ++k) {
+                limit.onSample(latencyNs, inFlight, false);
+            }
+        }
+    }
+
+    @Test
+    public void 余裕があれば上限まで増える() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 16, 4);
+        simulate(limit, new SimulatedBackend(100), 20);
+        assertEquals(16, limit.getLimit());
+    }
+
+    @Test
+    public void 処理時間が伸びると容量付近に収束する() {
+        SimulatedBackend backend = new SimulatedBackend(8);
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 64, 4);
+        simulate(limit, backend, 1000);
+
+        // 許容倍率(2.0)を超えない範囲に収まる
+        int result = limit.getLimit();
+        assertTrue("limit=" + result, result >= backend.mCapacity);
+        assertTrue("limit=" + result, result <= backend.mCapacity * 2 + 1);
+    }
+
+    @Test
+    public void 遅い環境では基準値が追従する() {
+        SimulatedBackend backend = new SimulatedBackend(8);
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 64, 4);
+        simulate(limit, backend, 1000);
+
+        // 処理時間が恒常的に10倍になった
+        SimulatedBackend slow = new SimulatedBackend(8) {
+            @Override
+            long getLatencyNs(int inFlight) {
+                return super.getLatencyNs(inFlight) * 10;
+            }
+        };
+        simulate(limit, slow, 2000);
+
+        int result = limit.getLimit();
+        assertTrue("limit=" + result, result >= slow.mCapacity);
+        assertTrue("limit=" + result, result <= slow.mCapacity * 2 + 1);
+    }
+
+    @Test
+    public void 上限の半分以上が使われていなければ増えない() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 16, 8);
+        long latencyNs = TimeUnit.MILLISECONDS.toNanos(100);
+        for (int i = 0; i < 100; ++i) {
+            limit.onSample(latencyNs, 3, false);
+        }
+        assertEquals(8, limit.getLimit());
+
+        for (int i = 0; i < 10; ++i) {
+            limit.onSample(latencyNs, 5, false);
+        }
+        assertEquals(9, limit.getLimit());
+    }
+
+    @Test
+    public void エラーが続くと下限まで減る() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 16, 16);
+        for (int i = 0; i < 1000; ++i) {
+            limit.onSample(TimeUnit.MILLISECONDS.toNanos(100), limit.getLimit(), true);
+        }
+        assertEquals(2, limit.getLimit());
+    }
+}
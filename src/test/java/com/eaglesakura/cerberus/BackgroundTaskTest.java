@@ -0,0 +1,67 @@
+package com.eaglesakura.cerberus;
+
+import com.eaglesakura.cerberus.error.TaskTimeoutException;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BackgroundTaskTest extends UnitTestCase {
+
+    @Test
+    public void 待ち時間が0でもキューの値を取り出せる() throws Exception {
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(1);
+        BackgroundTask<Object> task = new BackgroundTask<>();
+        assertNull(task.poll(queue, 0));
+
+        queue.add("value");
+        assertEquals("value", task.poll(queue, 0));
+    }
+
+    @Test
+    public void 待ち時間が0でも空いているロックは取得できる() throws Exception {
+        ReentrantLock lock = new ReentrantLock();
+        assertTrue(new BackgroundTask<>().tryLock(lock, 0));
+        assertTrue(lock.isHeldByCurrentThread());
+        lock.unlock();
+    }
+
+    @Test
+    public void 待ち時間が0でも完了済みのFutureは結果を取得できる() throws Exception {
+        FutureTask<String> done = new FutureTask<>(() -> "done");
+        done.run();
+
+        BackgroundTask<Object> task = new BackgroundTask<>();
+        assertEquals("done", task.get(done, 0));
+
+        try {
+            task.get(new FutureTask<>(() -> "pending"), 0);
+            fail();
+        } catch (TaskTimeoutException e) {
+        }
+    }
+
+    @Test
+    public void 並列変換の結果は入力と同じ順序となる() throws Exception {
+        List<Integer> input = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            input.add(i);
+        }
+
+        List<Integer> result = new TestLifecycleOwner().newTask().parallelMap(input, it -> it * 2);
+        assertEquals(input.size(), result.size());
+        for (int i = 0; i < input.size(); ++i) {
+            assertEquals(i * 2, (int) result.get(i));
+        }
+    }
+}
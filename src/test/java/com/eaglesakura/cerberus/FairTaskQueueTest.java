@@ -0,0 +1,74 @@
+package com.eaglesakura.cerberus;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FairTaskQueueTest {
+
+    @Test
+    public void 所有者ごとに交互に取り出される() {
+        FairTaskQueue<String> queue = new FairTaskQueue<>();
+        for (int i = 0; i < 100; ++i) {
+            queue.add("A", "A" + i);
+        }
+        queue.add("B", "B0");
+        queue.add("B", "B1");
+
+        assertEquals("A0", queue.poll());
+        assertEquals("B0", queue.poll());
+        assertEquals("A1", queue.poll());
+        assertEquals("B1", queue.poll());
+        assertEquals("A2", queue.poll());
+        assertEquals(97, queue.size());
+    }
+
+    @Test
+    public void 重みの分だけ続けて取り出される() {
+        FairTaskQueue<String> queue = new FairTaskQueue<String>() {
+            @Override
+            protected int getWeight(Object owner) {
+                return "B".equals(owner) ? 3 : 1;
+            }
+        };
+        for (int i = 0; i < 10; ++i) {
+            queue.add("A", "A");
+            queue.add("B", "B");
+        }
+
+        StringBuilder order = new StringBuilder();
+        for (int i = 0; i < 8; ++i) {
+            order.append(queue.poll());
+        }
+        assertEquals("ABBBABBB", order.toString());
+    }
+
+    @Test
+    public void 最も古いタスクを取得して削除できる() {
+        FairTaskQueue<String> queue = new FairTaskQueue<>();
+        queue.add("A", "A0");
+        queue.add("B", "B0");
+        queue.add("A", "A1");
+        queue.poll();
+
+        assertEquals("B0", queue.peekOldest());
+        assertTrue(queue.remove("B0"));
+        assertEquals("A1", queue.poll());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void 全てのタスクを積まれた順に取得する() {
+        FairTaskQueue<String> queue = new FairTaskQueue<>();
+        queue.add("A", "A0");
+        queue.add("B", "B0");
+        queue.add("A", "A1");
+
+        assertEquals(Arrays.asList("A0", "B0", "A1"), queue.items());
+    }
+}
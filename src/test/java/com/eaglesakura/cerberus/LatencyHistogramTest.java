@@ -0,0 +1,71 @@
+package com.eaglesakura.cerberus;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void 記録した値が集計される() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1 * MS);
+        histogram.record(3 * MS);
+        histogram.record(8 * MS);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(3, snapshot.getCount());
+        assertEquals(12.0, snapshot.getTotalMs(), 0.001);
+        assertEquals(4.0, snapshot.getMeanMs(), 0.001);
+        assertEquals(8.0, snapshot.getMaxMs(), 0.001);
+    }
+
+    @Test
+    public void パーセンタイルはバケットの上限で近似される() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; ++i) {
+            histogram.record(1 * MS);
+        }
+        histogram.record(100 * MS);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        double p50 = snapshot.getPercentileMs(50);
+        assertTrue("p50=" + p50, p50 >= 1.0 && p50 <= 2.1);
+        assertEquals(100.0, snapshot.getPercentileMs(100), 0.001);
+    }
+
+    @Test
+    public void 複数スレッドから記録しても欠落しない() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(() -> {
+                for (int k = 0; k < 10000; ++k) {
+                    histogram.record(k * 1000);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, histogram.snapshot().getCount());
+    }
+
+    @Test
+    public void リセットで初期化される() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5 * MS);
+        histogram.reset();
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0.0, snapshot.getPercentileMs(99), 0.001);
+    }
+}
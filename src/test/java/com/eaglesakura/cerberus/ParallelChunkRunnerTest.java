@@ -0,0 +1,63 @@
+package com.eaglesakura.cerberus;
+
+import com.eaglesakura.cerberus.error.TaskCanceledException;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelChunkRunnerTest {
+
+    @Test
+    public void 全ての要素が一度ずつ処理される() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            int[] values = new int[10000];
+            new ParallelChunkRunner(new BackgroundTask<>(), values.length) {
+                @Override
+                void onChunk(int start, int end) throws Exception {
+                    for (int i = start; i < end; ++i) {
+                        values[i] += i;
+                    }
+                }
+            }.execute(executor);
+
+            for (int i = 0; i < values.length; ++i) {
+                assertEquals(i, values[i]);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void キャンセルされたら全てのチャンクが中断される() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            AtomicInteger processed = new AtomicInteger();
+            BackgroundTask<Object> task = new BackgroundTask<>();
+            task.mCancelSignals.add(it -> processed.get() > 100);
+
+            try {
+                new ParallelChunkRunner(task, 100000) {
+                    @Override
+                    void onChunk(int start, int end) throws Exception {
+                        processed.addAndGet(end - start);
+                    }
+                }.execute(executor);
+                fail();
+            } catch (TaskCanceledException e) {
+                // キャンセルされた
+            }
+            assertTrue(processed.get() < 100000);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
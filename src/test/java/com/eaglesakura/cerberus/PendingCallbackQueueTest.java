@@ -0,0 +1,62 @@
+package com.eaglesakura.cerberus;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PendingCallbackQueueTest extends UnitTestCase {
+
+    @Test
+    public void 保留中に破棄されたコールバックは破棄を通知する() throws Exception {
+        TestLifecycleOwner owner = new TestLifecycleOwner();
+        AtomicBoolean called = new AtomicBoolean();
+        CountDownLatch dropped = new CountDownLatch(1);
+
+        // ON_RESUMEまで保留される
+        owner.mCallbackQueue.run(CallbackTime.Foreground, null, () -> called.set(true), dropped::countDown);
+        assertEquals(1, owner.mCallbackQueue.getCallbackStats(CallbackTime.Foreground).getPendingCount());
+
+        owner.destroy();
+        assertTrue(await(dropped, 1000));
+        assertFalse(called.get());
+    }
+
+    @Test
+    public void 実行されたコールバックは破棄を通知しない() throws Exception {
+        TestLifecycleOwner owner = new TestLifecycleOwner();
+        CountDownLatch called = new CountDownLatch(1);
+        AtomicBoolean dropped = new AtomicBoolean();
+
+        owner.mCallbackQueue.run(CallbackTime.Alive, null, called::countDown, () -> dropped.set(true));
+        assertTrue(await(called, 1000));
+
+        owner.destroy();
+        assertFalse(dropped.get());
+    }
+
+    @Test
+    public void タスク以外のコールバックも処理時間を監視する() throws Exception {
+        TestLifecycleOwner owner = new TestLifecycleOwner();
+        AtomicReference<SlowCallbackMonitor.SlowCallback> report = new AtomicReference<>();
+        SlowCallbackMonitor.enable(0, 1, report::set);
+        try {
+            runOnUiThread(() -> owner.mCallbackQueue.run(CallbackTime.Alive, () -> {
+                long end = System.nanoTime() + 1000 * 1000;
+                while (System.nanoTime() < end) {
+                    // 予算を超えさせる
+                }
+            }));
+
+            assertEquals(CallbackTime.Alive, report.get().getCallbackTime());
+            assertEquals(SlowCallbackMonitor.UNKNOWN_ORIGIN, report.get().getOriginName());
+        } finally {
+            SlowCallbackMonitor.disable();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.eaglesakura.cerberus;
+
+import com.eaglesakura.cerberus.error.TaskRejectedException;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueueLimitTest extends UnitTestCase {
+
+    static final ExecuteTarget TARGET = ExecuteTarget.LocalQueue;
+
+    /**
+     * 実行待ちのタスクを溜めるため、唯一のワーカーを占有しておく
+     */
+    static class Fixture {
+        final TestLifecycleOwner mOwner = new TestLifecycleOwner();
+
+        final ThreadControllerImpl.ThreadItem mItem = new ThreadControllerImpl.ThreadItem(TARGET);
+
+        final CountDownLatch mRelease = new CountDownLatch(1);
+
+        Fixture() throws Exception {
+            CountDownLatch started = new CountDownLatch(1);
+            enqueue(newTask(0), () -> {
+                started.countDown();
+                try {
+                    mRelease.await();
+                } catch (InterruptedException e) {
+                }
+            });
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+        }
+
+        BackgroundTask newTask(int priority) {
+            BackgroundTask task = mOwner.newTask();
+            task.mPriority = priority;
+            return task;
+        }
+
+        BackgroundTask enqueue(BackgroundTask task, Runnable command) {
+            mItem.getScheduler(task).scheduleDirect(command);
+            return task;
+        }
+
+        BackgroundTask enqueue(int priority) {
+            return enqueue(newTask(priority), () -> {
+            });
+        }
+
+        void release() {
+            mRelease.countDown();
+        }
+    }
+
+    @Test
+    public void Rejectでは新しいタスクを受け付けない() throws Exception {
+        ExecuteTargetSettings.setQueueLimit(TARGET, 2, QueuePolicy.Reject);
+        Fixture fixture = new Fixture();
+        try {
+            long rejected = ExecuteTargetSettings.getRejectedTaskCount(TARGET);
+            long shed = ExecuteTargetSettings.getShedTaskCount(TARGET);
+            fixture.enqueue(0);
+            assertNull(fixture.mItem.admit(fixture.newTask(0)));
+            fixture.enqueue(0);
+
+            assertTrue(fixture.mItem.admit(fixture.newTask(0)) instanceof TaskRejectedException);
+            assertEquals(2, fixture.mItem.getQueueDepth());
+            assertEquals(rejected + 1, ExecuteTargetSettings.getRejectedTaskCount(TARGET));
+            assertEquals(shed, ExecuteTargetSettings.getShedTaskCount(TARGET));
+        } finally {
+            fixture.release();
+            ExecuteTargetSettings.clearQueueLimit(TARGET);
+        }
+    }
+
+    @Test
+    public void ShedOldestでは最も古いタスクを破棄する() throws Exception {
+        ExecuteTargetSettings.setQueueLimit(TARGET, 2, QueuePolicy.ShedOldest);
+        Fixture fixture = new Fixture();
+        try {
+            long shed = ExecuteTargetSettings.getShedTaskCount(TARGET);
+            BackgroundTask oldest = fixture.enqueue(0);
+            BackgroundTask newer = fixture.enqueue(0);
+
+            assertNull(fixture.mItem.admit(fixture.newTask(0)));
+            assertTrue(oldest.getError() instanceof TaskRejectedException);
+            assertFalse(newer.isFinished());
+            assertEquals(1, fixture.mItem.getQueueDepth());
+            assertEquals(shed + 1, ExecuteTargetSettings.getShedTaskCount(TARGET));
+        } finally {
+            fixture.release();
+            ExecuteTargetSettings.clearQueueLimit(TARGET);
+        }
+    }
+
+    @Test
+    public void ShedLowestPriorityでは優先度の低いタスクを破棄する() throws Exception {
+        ExecuteTargetSettings.setQueueLimit(TARGET, 2, QueuePolicy.ShedLowestPriority);
+        Fixture fixture = new Fixture();
+        try {
+            long rejected = ExecuteTargetSettings.getRejectedTaskCount(TARGET);
+            long shed = ExecuteTargetSettings.getShedTaskCount(TARGET);
+            BackgroundTask high = fixture.enqueue(5);
+            BackgroundTask low = fixture.enqueue(1);
+
+            assertNull(fixture.mItem.admit(fixture.newTask(3)));
+            assertTrue(low.getError() instanceof TaskRejectedException);
+            assertFalse(high.isFinished());
+            assertEquals(shed + 1, ExecuteTargetSettings.getShedTaskCount(TARGET));
+            fixture.enqueue(3);
+
+            // 新しいタスクの優先度が全てのタスクより低い場合は、破棄ではなく拒否として数える
+            assertTrue(fixture.mItem.admit(fixture.newTask(0)) instanceof TaskRejectedException);
+            assertEquals(2, fixture.mItem.getQueueDepth());
+            assertEquals(shed + 1, ExecuteTargetSettings.getShedTaskCount(TARGET));
+            assertEquals(rejected + 1, ExecuteTargetSettings.getRejectedTaskCount(TARGET));
+        } finally {
+            fixture.release();
+            ExecuteTargetSettings.clearQueueLimit(TARGET);
+        }
+    }
+
+    @Test
+    public void ShedLowestPriorityでは同じ優先度なら最も古いタスクを破棄する() throws Exception {
+        ExecuteTargetSettings.setQueueLimit(TARGET, 2, QueuePolicy.ShedLowestPriority);
+        Fixture fixture = new Fixture();
+        try {
+            long rejected = ExecuteTargetSettings.getRejectedTaskCount(TARGET);
+            BackgroundTask oldest = fixture.enqueue(0);
+            BackgroundTask newer = fixture.enqueue(0);
+
+            assertNull(fixture.mItem.admit(fixture.newTask(0)));
+            assertTrue(oldest.getError() instanceof TaskRejectedException);
+            assertFalse(newer.isFinished());
+            assertEquals(rejected, ExecuteTargetSettings.getRejectedTaskCount(TARGET));
+        } finally {
+            fixture.release();
+            ExecuteTargetSettings.clearQueueLimit(TARGET);
+        }
+    }
+
+    @Test
+    public void 補助処理は上限を超えて積まれず破棄されてもタスクを失敗させない() throws Exception {
+        ExecuteTargetSettings.setQueueLimit(TARGET, 2, QueuePolicy.ShedOldest);
+        Fixture fixture = new Fixture();
+        try {
+            long shed = ExecuteTargetSettings.getShedTaskCount(TARGET);
+            BackgroundTask owner = fixture.newTask(0);
+            assertTrue(fixture.mItem.enqueueHelper(owner, () -> {
+            }));
+            fixture.enqueue(0);
+            assertFalse(fixture.mItem.enqueueHelper(owner, () -> {
+            }));
+
+            // 最も古い補助処理が破棄されるが、タスク自体は失敗しない
+            assertNull(fixture.mItem.admit(fixture.newTask(0)));
+            assertFalse(owner.isFinished());
+            assertEquals(1, fixture.mItem.getQueueDepth());
+            assertEquals(shed, ExecuteTargetSettings.getShedTaskCount(TARGET));
+        } finally {
+            fixture.release();
+            ExecuteTargetSettings.clearQueueLimit(TARGET);
+        }
+    }
+
+    @Test
+    public void 拒否されたタスクは流量制限の実行権を返却する() throws Exception {
+        ExecuteTargetSettings.setQueueLimit(TARGET, 1, QueuePolicy.Reject);
+        ExecuteTargetSettings.setRateLimit("QueueLimitTest", 0.001, 1);
+        PendingCallbackQueue callbackQueue = new TestLifecycleOwner().mCallbackQueue;
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            new BackgroundTaskBuilder<Object>(callbackQueue)
+                    .executeOn(TARGET)
+                    .callbackOn(CallbackTime.FireAndForget)
+                    .async(task -> {
+                        started.countDown();
+                        release.await();
+                        return null;
+                    })
+                    .start();
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+
+            // キューを埋めておく
+            new BackgroundTaskBuilder<Object>(callbackQueue)
+                    .executeOn(TARGET)
+                    .callbackOn(CallbackTime.FireAndForget)
+                    .async(task -> null)
+                    .start();
+
+            CountDownLatch failed = new CountDownLatch(1);
+            AtomicReference<Exception> error = new AtomicReference<>();
+            new BackgroundTaskBuilder<Object>(callbackQueue)
+                    .executeOn(TARGET)
+                    .callbackOn(CallbackTime.FireAndForget)
+                    .rateLimit("QueueLimitTest")
+                    .async(task -> null)
+                    .failed((it, task) -> {
+                        error.set(it);
+                        failed.countDown();
+                    })
+                    .start();
+
+            assertTrue(await(failed, 1000));
+            assertTrue(error.get() instanceof TaskRejectedException);
+            assertEquals(0, ExecuteTargetSettings.reserveRateLimit(TARGET, "QueueLimitTest"));
+        } finally {
+            release.countDown();
+            ExecuteTargetSettings.clearRateLimit("QueueLimitTest");
+            ExecuteTargetSettings.clearQueueLimit(TARGET);
+        }
+    }
+
+    @Test
+    public void Blockではキューに積まれる前のタスクも上限に数える() throws Exception {
+        ExecuteTargetSettings.setQueueLimit(TARGET, 2, QueuePolicy.Block);
+        Fixture fixture = new Fixture();
+        try {
+            BackgroundTask first = fixture.newTask(0);
+            BackgroundTask second = fixture.newTask(0);
+            BackgroundTask third = fixture.newTask(0);
+
+            // キューはまだ空だが、start()済みの2つで上限に達する
+            assertTrue(fixture.mItem.reserveSlot(first, false));
+            assertTrue(fixture.mItem.reserveSlot(second, false));
+            assertFalse(fixture.mItem.reserveSlot(third, false));
+            assertFalse(fixture.mItem.acquireSlot(third, () -> {
+            }));
+
+            // Blockは拒否せず、空き待ちとなる
+            assertNull(fixture.mItem.admit(third));
+
+            fixture.enqueue(first, () -> {
+            });
+            assertFalse(third.mQueueSlotReserved);
+            fixture.mItem.releaseSlot(second);
+            assertTrue(third.mQueueSlotReserved);
+        } finally {
+            fixture.release();
+            ExecuteTargetSettings.clearQueueLimit(TARGET);
+        }
+    }
+
+    @Test
+    public void Blockでは空きができるまで呼び出し元を待たせる() throws Exception {
+        ExecuteTargetSettings.setQueueLimit(TARGET, 1, QueuePolicy.Block);
+        Fixture fixture = new Fixture();
+        try {
+            BackgroundTask queued = fixture.newTask(0);
+            assertTrue(fixture.mItem.reserveSlot(queued, true));
+
+            BackgroundTask waiting = fixture.newTask(0);
+            CountDownLatch reserved = new CountDownLatch(1);
+            Thread producer = new Thread(() -> {
+                if (fixture.mItem.reserveSlot(waiting, true)) {
+                    reserved.countDown();
+                }
+            });
+            producer.start();
+            assertFalse(reserved.await(100, TimeUnit.MILLISECONDS));
+
+            fixture.mItem.releaseSlot(queued);
+            assertTrue(reserved.await(1, TimeUnit.SECONDS));
+        } finally {
+            fixture.release();
+            ExecuteTargetSettings.clearQueueLimit(TARGET);
+        }
+    }
+
+    @Test
+    public void 待機中に割り込まれた場合は割り込み状態を維持する() throws Exception {
+        ExecuteTargetSettings.setQueueLimit(TARGET, 1, QueuePolicy.Block);
+        Fixture fixture = new Fixture();
+        try {
+            assertTrue(fixture.mItem.reserveSlot(fixture.newTask(0), true));
+
+            BackgroundTask waiting = fixture.newTask(0);
+            boolean[] result = new boolean[2];
+            Thread producer = new Thread(() -> {
+                result[0] = fixture.mItem.reserveSlot(waiting, true);
+                result[1] = Thread.currentThread().isInterrupted();
+            });
+            producer.start();
+            Thread.sleep(50);
+            producer.interrupt();
+            producer.join(1000);
+
+            assertFalse(result[0]);
+            assertTrue(result[1]);
+        } finally {
+            fixture.release();
+            ExecuteTargetSettings.clearQueueLimit(TARGET);
+        }
+    }
+}
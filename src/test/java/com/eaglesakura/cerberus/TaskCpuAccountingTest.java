@@ -0,0 +1,66 @@
+package com.eaglesakura.cerberus;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TaskCpuAccountingTest {
+
+    static void run(String tag, ExecuteTarget target, Runnable body) {
+        BackgroundTask<Object> task = new BackgroundTask<>();
+        task.mTag = tag;
+        TaskCpuAccounting.onTaskRunning(task);
+        long start = System.nanoTime();
+        body.run();
+        TaskCpuAccounting.onTaskFinished(task, target, System.nanoTime() - start);
+    }
+
+    @Test
+    public void 計算処理と待機処理のCPU時間が区別される() {
+        TaskCpuAccounting.reset();
+        assertTrue(TaskCpuAccounting.enable());
+        try {
+            for (int i = 0; i < 3; ++i) {
+                run("compute", ExecuteTarget.Network, () -> {
+                    long end = System.nanoTime() + 30 * 1000 * 1000;
+                    double value = 0;
+                    while (System.nanoTime() < end) {
+                        value += Math.sqrt(value + 1);
+                    }
+                });
+                run("io", ExecuteTarget.Network, () -> {
+                    try {
+                        Thread.sleep(30);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+
+            List<TaskCpuAccounting.TagStats> stats = TaskCpuAccounting.getStats();
+            assertEquals(2, stats.size());
+            assertEquals("compute", stats.get(0).getTag());
+            assertEquals(3, stats.get(0).getCount());
+            assertTrue("compute=" + stats.get(0), stats.get(0).getCpuRatio() > 0.5);
+            assertEquals("io", stats.get(1).getTag());
+            assertTrue("io=" + stats.get(1), stats.get(1).getCpuRatio() < 0.2);
+        } finally {
+            TaskCpuAccounting.disable();
+        }
+    }
+
+    @Test
+    public void CPU時間を取得できなかったタスクは割合に含めない() {
+        TaskCpuAccounting.TagStats stats = new TaskCpuAccounting.TagStats("tag", ExecuteTarget.Network);
+        stats.add(40 * 1000 * 1000, 50 * 1000 * 1000);
+        stats.add(-1, 50 * 1000 * 1000);
+
+        assertEquals(2, stats.getCount());
+        assertEquals(100.0, stats.getWallTimeMs(), 0.001);
+        assertEquals(40.0, stats.getCpuTimeMs(), 0.001);
+        assertEquals(0.8, stats.getCpuRatio(), 0.001);
+    }
+}
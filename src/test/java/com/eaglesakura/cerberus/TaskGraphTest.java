@@ -0,0 +1,122 @@
+package com.eaglesakura.cerberus;
+
+import com.eaglesakura.cerberus.error.TaskCanceledException;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaskGraphTest extends UnitTestCase {
+
+    static TaskGraph.Async<Object> empty() {
+        return (graph, task) -> null;
+    }
+
+    /**
+     * 実行せずにノードの所要時間を設定する
+     */
+    static void setTimeMs(TaskGraph graph, String name, long timeMs) {
+        TaskGraph.Node<?> node = graph.mNodes.get(name);
+        node.mLaunchTime = 1000;
+        node.mFinishTime = 1000 + timeMs;
+    }
+
+    static TaskGraph runToEnd(TaskGraph graph) throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        graph.completed(it -> latch.countDown())
+                .failed((error, it) -> latch.countDown())
+                .canceled(it -> latch.countDown())
+                .start();
+        assertTrue(await(latch, 1000));
+        assertTrue(graph.isFinished());
+        return graph;
+    }
+
+    @Test
+    public void 循環参照があれば開始できない() throws Exception {
+        TaskGraph graph = new TaskGraph(new TestLifecycleOwner().mCallbackQueue)
+                .node("a", ExecuteTarget.LocalParallel, empty(), "c")
+                .node("b", ExecuteTarget.LocalParallel, empty(), "a")
+                .node("c", ExecuteTarget.LocalParallel, empty(), "b");
+        try {
+            graph.start();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Graph has cycle", e.getMessage());
+        }
+    }
+
+    @Test
+    public void 存在しない依存先があれば開始できない() throws Exception {
+        TaskGraph graph = new TaskGraph(new TestLifecycleOwner().mCallbackQueue)
+                .node("a", ExecuteTarget.LocalParallel, empty())
+                .node("b", ExecuteTarget.LocalParallel, empty(), "a", "missing");
+        try {
+            graph.start();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Node not found : missing <- b", e.getMessage());
+        }
+    }
+
+    @Test
+    public void 失敗は依存するノードにのみ伝播する() throws Exception {
+        AtomicBoolean downstreamCalled = new AtomicBoolean();
+        TaskGraph graph = runToEnd(new TaskGraph(new TestLifecycleOwner().mCallbackQueue)
+                .node("root", ExecuteTarget.LocalParallel, (g, task) -> 1)
+                .node("fail", ExecuteTarget.LocalParallel, (g, task) -> {
+                    throw new IllegalStateException("fail");
+                }, "root")
+                .node("downstream", ExecuteTarget.LocalParallel, (g, task) -> {
+                    downstreamCalled.set(true);
+                    return null;
+                }, "fail")
+                .node("sibling", ExecuteTarget.LocalParallel, (g, task) -> (Integer) g.getResult("root") + 1, "root"));
+
+        assertEquals(TaskGraph.NodeState.Completed, graph.getNodeState("root"));
+        assertEquals(TaskGraph.NodeState.Failed, graph.getNodeState("fail"));
+        assertEquals(TaskGraph.NodeState.Canceled, graph.getNodeState("downstream"));
+        assertTrue(graph.getError("downstream") instanceof TaskCanceledException);
+        assertFalse(downstreamCalled.get());
+
+        assertEquals(TaskGraph.NodeState.Completed, graph.getNodeState("sibling"));
+        assertEquals(Integer.valueOf(2), graph.<Integer>getResult("sibling"));
+    }
+
+    @Test
+    public void クリティカルパスは最も時間のかかった経路となる() throws Exception {
+        TaskGraph graph = runToEnd(new TaskGraph(new TestLifecycleOwner().mCallbackQueue)
+                .node("a", ExecuteTarget.LocalParallel, empty())
+                .node("b", ExecuteTarget.LocalParallel, empty(), "a")
+                .node("c", ExecuteTarget.LocalParallel, empty(), "a")
+                .node("d", ExecuteTarget.LocalParallel, empty(), "b", "c"));
+        setTimeMs(graph, "a", 10);
+        setTimeMs(graph, "b", 5);
+        setTimeMs(graph, "c", 30);
+        setTimeMs(graph, "d", 10);
+
+        assertEquals(Arrays.asList("a", "c", "d"), graph.getCriticalPath());
+        assertEquals(50, graph.getCriticalPathMs());
+    }
+
+    @Test
+    public void 依存先の所要時間が全て0でも経路が途切れない() throws Exception {
+        TaskGraph graph = runToEnd(new TaskGraph(new TestLifecycleOwner().mCallbackQueue)
+                .node("a", ExecuteTarget.LocalParallel, empty())
+                .node("b", ExecuteTarget.LocalParallel, empty(), "a")
+                .node("c", ExecuteTarget.LocalParallel, empty(), "b"));
+        setTimeMs(graph, "a", 0);
+        setTimeMs(graph, "b", 0);
+        setTimeMs(graph, "c", 20);
+
+        assertEquals(Arrays.asList("a", "b", "c"), graph.getCriticalPath());
+        assertEquals(20, graph.getCriticalPathMs());
+    }
+}
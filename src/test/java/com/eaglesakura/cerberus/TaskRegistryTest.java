@@ -0,0 +1,61 @@
+package com.eaglesakura.cerberus;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TaskRegistryTest extends UnitTestCase {
+
+    static BackgroundTask<?> newTask(TestLifecycleOwner owner, String tag) {
+        BackgroundTask<?> task = owner.newTask();
+        task.mTag = tag;
+        return task;
+    }
+
+    @Test
+    public void 無効な場合はタスクを登録しない() throws Exception {
+        TaskRegistry.disable();
+        TaskRegistry.register(newTask(new TestLifecycleOwner(), "task"));
+
+        assertTrue(TaskRegistry.getTasks().isEmpty());
+    }
+
+    @Test
+    public void コールバックが呼び出されたタスクは登録から外れる() throws Exception {
+        TaskRegistry.enable();
+        try {
+            TestLifecycleOwner owner = new TestLifecycleOwner();
+            BackgroundTask<?> task = newTask(owner, "task");
+            TaskRegistry.register(task);
+            assertEquals(1, TaskRegistry.getTasks().size());
+
+            TaskRegistry.unregister(task);
+            assertTrue(TaskRegistry.getTasks().isEmpty());
+        } finally {
+            TaskRegistry.disable();
+        }
+    }
+
+    @Test
+    public void 破棄されたオーナーのタスクは取得しない() throws Exception {
+        TaskRegistry.enable();
+        try {
+            TestLifecycleOwner alive = new TestLifecycleOwner();
+            TestLifecycleOwner destroyed = new TestLifecycleOwner();
+            TaskRegistry.register(newTask(alive, "alive"));
+            TaskRegistry.register(newTask(destroyed, "destroyed"));
+
+            destroyed.destroy();
+
+            List<TaskRegistry.TaskInfo> tasks = TaskRegistry.getTasks();
+            assertEquals(1, tasks.size());
+            assertEquals("alive", tasks.get(0).getTag());
+            assertEquals(alive.mCallbackQueue.getOwnerName(), tasks.get(0).getOwner());
+        } finally {
+            TaskRegistry.disable();
+        }
+    }
+}
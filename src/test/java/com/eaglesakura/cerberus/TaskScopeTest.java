@@ -0,0 +1,55 @@
+package com.eaglesakura.cerberus;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TaskScopeTest extends UnitTestCase {
+
+    @Test
+    public void 再試行では前回の失敗を引き継がない() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicReference<String> result = new AtomicReference<>();
+        AtomicReference<Exception> error = new AtomicReference<>();
+        CountDownLatch finished = new CountDownLatch(1);
+
+        new BackgroundTaskBuilder<String>(new TestLifecycleOwner().mCallbackQueue)
+                .executeOn(ExecuteTarget.LocalParallel)
+                .callbackOn(CallbackTime.FireAndForget)
+                .retry(new RetryPolicy().maxAttempts(2).backoff(0, 1.0, 0))
+                .async(task -> {
+                    // 初回の試行では子タスクが失敗する
+                    boolean first = attempts.incrementAndGet() == 1;
+                    task.scope().<String>newTask()
+                            .executeOn(ExecuteTarget.GlobalParallel)
+                            .async(child -> {
+                                if (first) {
+                                    throw new IllegalStateException("child");
+                                }
+                                return "child";
+                            })
+                            .start();
+                    return "parent";
+                })
+                .completed((it, task) -> {
+                    result.set(it);
+                    finished.countDown();
+                })
+                .failed((it, task) -> {
+                    error.set(it);
+                    finished.countDown();
+                })
+                .start();
+
+        assertTrue(await(finished, 1000));
+        assertNull(error.get());
+        assertEquals("parent", result.get());
+        assertEquals(2, attempts.get());
+    }
+}
@@ -0,0 +1,77 @@
+package com.eaglesakura.cerberus;
+
+import com.eaglesakura.cerberus.error.TaskCanceledException;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TaskStreamsTest extends UnitTestCase {
+
+    @Test
+    public void バッファより大きなデータをコピーできる() throws Exception {
+        byte[] data = new byte[TaskStreams.BUFFER_SIZE * 3 + 123];
+        new Random(0).nextBytes(data);
+
+        ByteArrayOutputStream dst = new ByteArrayOutputStream();
+        long total = TaskStreams.copy(new BackgroundTask<>(), new ByteArrayInputStream(data), dst);
+
+        assertEquals(data.length, total);
+        assertTrue(Arrays.equals(data, dst.toByteArray()));
+    }
+
+    @Test
+    public void 同じスレッドではバッファが再利用される() throws Exception {
+        ByteBuffer first = TaskStreams.obtainBuffer();
+        // 使用中は別のバッファが割り当てられる
+        ByteBuffer nested = TaskStreams.obtainBuffer();
+        assertTrue(first != nested);
+        TaskStreams.recycleBuffer(nested);
+        TaskStreams.recycleBuffer(first);
+
+        first.position(10);
+        ByteBuffer reused = TaskStreams.obtainBuffer();
+        assertTrue(reused == first);
+        assertEquals(0, reused.position());
+        assertEquals(TaskStreams.BUFFER_SIZE, reused.limit());
+        TaskStreams.recycleBuffer(reused);
+    }
+
+    @Test
+    public void 読み込み待ちの間もキャンセルシグナルを確認する() throws Exception {
+        Pipe pipe = Pipe.open();
+        AtomicBoolean canceled = new AtomicBoolean();
+        BackgroundTask<Object> task = new BackgroundTask<>();
+        task.mCancelSignals.add(it -> canceled.get());
+
+        AtomicReference<Exception> error = new AtomicReference<>();
+        Thread worker = new Thread(() -> {
+            try {
+                // 書き込み側が何も送らないため、読み込み待ちとなる
+                TaskStreams.copy(task, pipe.source(), Channels.newChannel(new ByteArrayOutputStream()));
+            } catch (Exception e) {
+                error.set(e);
+            }
+        });
+        worker.start();
+        Thread.sleep(50);
+
+        canceled.set(true);
+        worker.join(1000);
+        assertFalse(worker.isAlive());
+        assertTrue(error.get() instanceof TaskCanceledException);
+        pipe.sink().close();
+    }
+}
@@ -0,0 +1,52 @@
+package com.eaglesakura.cerberus;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TaskTimerTest {
+
+    @Test
+    public void 指定時間後に実行される() throws Exception {
+        TaskTimer timer = new TaskTimer();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        long start = System.currentTimeMillis();
+        timer.schedule(latch::countDown, 100);
+
+        assertTrue(latch.await(1000, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+
+    @Test
+    public void ホイールを一周以上するタイマーが実行される() throws Exception {
+        TaskTimer timer = new TaskTimer();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        long delayMs = TaskTimer.TICK_MS * TaskTimer.WHEEL_SIZE + 50;
+        long start = System.currentTimeMillis();
+        timer.schedule(latch::countDown, delayMs);
+
+        assertTrue(latch.await(delayMs * 2, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - start >= delayMs);
+    }
+
+    @Test
+    public void 取り消したタイマーは実行されない() throws Exception {
+        TaskTimer timer = new TaskTimer();
+        AtomicInteger count = new AtomicInteger();
+
+        TaskTimer.Timeout timeout = timer.schedule(count::incrementAndGet, 50);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+
+        Thread.sleep(200);
+        assertEquals(0, count.get());
+    }
+}
@@ -0,0 +1,117 @@
+package com.eaglesakura.cerberus;
+
+import com.eaglesakura.cerberus.error.TaskTimeoutException;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TaskWatchdogTest extends UnitTestCase {
+
+    /**
+     * 割り込みに応答せず、解放されるまでスレッドを占有する
+     */
+    static void occupy(CountDownLatch release) {
+        while (release.getCount() > 0) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+            }
+        }
+    }
+
+    @Test
+    public void 閾値を超えたタスクを強制終了する() throws Exception {
+        AtomicReference<TaskWatchdog.StuckTask> report = new AtomicReference<>();
+        CountDownLatch reported = new CountDownLatch(1);
+        TaskWatchdog.enable(it -> {
+            report.set(it);
+            reported.countDown();
+        });
+        TaskWatchdog.setThreshold(ExecuteTarget.LocalParallel, 50, true);
+
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Exception> error = new AtomicReference<>();
+        CountDownLatch failed = new CountDownLatch(1);
+        try {
+            new BackgroundTaskBuilder<Object>(new TestLifecycleOwner().mCallbackQueue)
+                    .executeOn(ExecuteTarget.LocalParallel)
+                    .callbackOn(CallbackTime.FireAndForget)
+                    .async(task -> {
+                        occupy(release);
+                        return null;
+                    })
+                    .failed((it, task) -> {
+                        error.set(it);
+                        failed.countDown();
+                    })
+                    .start();
+
+            assertTrue(await(reported, 1000));
+            assertTrue(report.get().isAborted());
+            assertEquals(ExecuteTarget.LocalParallel, report.get().getTarget());
+            assertTrue(await(failed, 1000));
+            assertTrue(error.get() instanceof TaskTimeoutException);
+        } finally {
+            release.countDown();
+            TaskWatchdog.setThreshold(ExecuteTarget.LocalParallel, 0, false);
+            TaskWatchdog.disable();
+        }
+    }
+
+    @Test
+    public void 直列キューでは強制終了後も後続のタスクを追い越させない() throws Exception {
+        CountDownLatch reported = new CountDownLatch(1);
+        TaskWatchdog.enable(it -> reported.countDown());
+        TaskWatchdog.setThreshold(ExecuteTarget.LocalQueue, 50, true);
+
+        PendingCallbackQueue callbackQueue = new TestLifecycleOwner().mCallbackQueue;
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch next = new CountDownLatch(1);
+        try {
+            new BackgroundTaskBuilder<Object>(callbackQueue)
+                    .executeOn(ExecuteTarget.LocalQueue)
+                    .callbackOn(CallbackTime.FireAndForget)
+                    .async(task -> {
+                        occupy(release);
+                        return null;
+                    })
+                    .start();
+            new BackgroundTaskBuilder<Object>(callbackQueue)
+                    .executeOn(ExecuteTarget.LocalQueue)
+                    .callbackOn(CallbackTime.FireAndForget)
+                    .async(task -> {
+                        next.countDown();
+                        return null;
+                    })
+                    .start();
+
+            assertTrue(await(reported, 1000));
+            assertFalse(next.await(100, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            assertTrue(next.await(1, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            TaskWatchdog.setThreshold(ExecuteTarget.LocalQueue, 0, false);
+            TaskWatchdog.disable();
+        }
+    }
+
+    @Test
+    public void 非同期処理を終えたタスクは強制終了しない() throws Exception {
+        BackgroundTask<Object> task = new BackgroundTask<>();
+        task.mState = BackgroundTask.State.Running;
+        task.mWatchdogState = BackgroundTask.WATCHDOG_FINISHED;
+
+        assertFalse(task.abort(new TaskTimeoutException("timeout"), true));
+        assertNull(task.getError());
+    }
+}
@@ -0,0 +1,42 @@
+package com.eaglesakura.cerberus;
+
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleOwner;
+import android.arch.lifecycle.LifecycleRegistry;
+
+/**
+ * テスト用のLifecycleOwner
+ *
+ * ON_CREATE済みの状態で生成し、PendingCallbackQueueを関連付ける。
+ */
+class TestLifecycleOwner implements LifecycleOwner {
+    final LifecycleRegistry mRegistry = new LifecycleRegistry(this);
+
+    final PendingCallbackQueue mCallbackQueue;
+
+    TestLifecycleOwner() {
+        mRegistry.handleLifecycleEvent(Lifecycle.Event.ON_CREATE);
+        mCallbackQueue = new PendingCallbackQueue().bind(this);
+    }
+
+    @Override
+    public Lifecycle getLifecycle() {
+        return mRegistry;
+    }
+
+    /**
+     * 実行せずにキューへ積むためのタスクを生成する
+     */
+    BackgroundTask<Object> newTask() {
+        BackgroundTask<Object> task = new BackgroundTask<>();
+        task.mCallbackQueue = mCallbackQueue;
+        return task;
+    }
+
+    /**
+     * ライフサイクルのイベントはUIThreadで通知する
+     */
+    void destroy() throws Exception {
+        UnitTestCase.runOnUiThread(() -> mRegistry.handleLifecycleEvent(Lifecycle.Event.ON_DESTROY));
+    }
+}
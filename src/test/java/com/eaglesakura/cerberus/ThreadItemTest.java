@@ -0,0 +1,49 @@
+package com.eaglesakura.cerberus;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadItemTest extends UnitTestCase {
+
+    @Test
+    public void 直列キューは所有者に関わらず積まれた順に処理する() throws Exception {
+        ThreadControllerImpl.ThreadItem item = new ThreadControllerImpl.ThreadItem(ExecuteTarget.GlobalQueue);
+        TestLifecycleOwner a = new TestLifecycleOwner();
+        TestLifecycleOwner b = new TestLifecycleOwner();
+
+        // 唯一のワーカーを占有し、実行待ちのタスクを溜める
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        item.getScheduler(a.newTask()).scheduleDirect(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch finished = new CountDownLatch(4);
+        for (String name : Arrays.asList("A0", "A1", "A2", "B0")) {
+            TestLifecycleOwner owner = name.startsWith("A") ? a : b;
+            item.getScheduler(owner.newTask()).scheduleDirect(() -> {
+                order.add(name);
+                finished.countDown();
+            });
+        }
+
+        release.countDown();
+        assertTrue(finished.await(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("A0", "A1", "A2", "B0"), order);
+    }
+}
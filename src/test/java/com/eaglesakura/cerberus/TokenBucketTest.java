@@ -0,0 +1,76 @@
+package com.eaglesakura.cerberus;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenBucketTest {
+
+    static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void バースト分は待たずに実行できる() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(100, bucket.reserve(now));
+    }
+
+    @Test
+    public void 超過した予約は順番に待たされる() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(100, bucket.reserve(now));
+        assertEquals(200, bucket.reserve(now));
+        assertEquals(300, bucket.reserve(now));
+    }
+
+    @Test
+    public void 時間経過でトークンが補充される() {
+        TokenBucket bucket = new TokenBucket(10, 2);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(100, bucket.reserve(now));
+
+        // 前借り分を返済し、さらに1つ貯まる
+        now += SECOND / 5;
+        assertEquals(0, bucket.reserve(now));
+
+        // 上限以上は貯まらない
+        now += SECOND * 10;
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(100, bucket.reserve(now));
+    }
+
+    @Test
+    public void 返却した予約の分だけ後続の待ち時間が短くなる() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        long now = System.nanoTime();
+
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(100, bucket.reserve(now));
+        assertEquals(200, bucket.reserve(now));
+
+        // 待機中のタスクがキャンセルされた
+        bucket.refund();
+        assertEquals(200, bucket.reserve(now));
+
+        // 上限以上は貯まらない
+        bucket.refund();
+        bucket.refund();
+        bucket.refund();
+        bucket.refund();
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(100, bucket.reserve(now));
+    }
+}
@@ -3,7 +3,43 @@ package com.eaglesakura.cerberus;
 import com.eaglesakura.android.AndroidSupportTestCase;
 
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
 
 @Config(constants = BuildConfig.class, packageName = BuildConfig.APPLICATION_ID, sdk = 23)
 public abstract class UnitTestCase extends AndroidSupportTestCase {
+
+    /**
+     * UIThreadへpostされた処理を実行しながら、latchが解放されるのを待つ
+     *
+     * テストはUIThreadで実行されるため、単にlatchで待つとコールバックが実行されない。
+     *
+     * @return 時間内に解放された場合true
+     */
+    protected static boolean await(CountDownLatch latch, long timeoutMs) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMs;
+        do {
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+            if (latch.await(10, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } while (System.currentTimeMillis() < end);
+        return false;
+    }
+
+    /**
+     * UIThreadで処理を行い、完了を待つ
+     */
+    protected static void runOnUiThread(Runnable action) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        PendingCallbackQueue.sHandler.post(() -> {
+            action.run();
+            latch.countDown();
+        });
+        assertTrue(await(latch, 1000));
+    }
 }